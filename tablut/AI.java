@@ -1,42 +1,74 @@
 package tablut;
-import java.util.List;
 
-import static tablut.Piece.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-/** A Player that automatically generates moves.
+/** A Player that automatically generates moves, by a Searcher on its
+ *  own thread, or with _config.threads greater than 1, joined by helper
+ *  Searchers on other threads (Lazy SMP), or by a YoungBrothersSearch
+ *  if _config.engine is "ybw".  If _config.ponder, it goes on searching
+ *  on another thread while the opponent considers its reply, assuming
+ *  the reply its search predicted.  Moves found in _config.book, if
+ *  any, are played without searching.
  *  @author Abel Yagubyan
  */
 class AI extends Player {
 
-    /** A position-score magnitude indicating a win (for white if positive,
-     *  black if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
-    /** A position-score magnitude indicating a forced win in a subsequent
-     *  move.  This differs from WINNING_VALUE to avoid putting off wins. */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
-    /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
-
     /** A new AI with no piece or controller (intended to produce
-     *  a template). */
+     *  a template) using default settings. */
     AI() {
-        this(null, null);
+        this(new SearchConfig());
+    }
+
+    /** A new AI with no piece or controller (intended to produce
+     *  a template) using the settings in CONFIG. */
+    AI(SearchConfig config) {
+        this(null, null, config);
     }
 
-    /** A new AI playing PIECE under control of CONTROLLER. */
-    AI(Piece piece, Controller controller) {
+    /** A new AI playing PIECE under control of CONTROLLER, using the
+     *  settings in CONFIG. */
+    AI(Piece piece, Controller controller, SearchConfig config) {
         super(piece, controller);
+        _config = config;
+        _time = new TimeControl(config.moveTime, config.clock);
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, _config);
     }
 
     @Override
     String myMove() {
-        Move mv = findMove();
-        _controller.reportMove(mv);
+        return myMove(new AtomicBoolean());
+    }
+
+    @Override
+    String myMove(AtomicBoolean moveNow) {
+        _moveNow = moveNow;
+        Move mv = bookMove(board());
+        if (mv == null) {
+            mv = tablebaseMove(board());
+        }
+        if (mv == null) {
+            mv = ponderResult(board());
+        }
+        if (mv == null) {
+            mv = findMove(board());
+        }
+        _moveNow = new AtomicBoolean();
+        if (_config.ponder) {
+            startPondering(board(), mv);
+        }
         return mv.toString();
     }
 
@@ -45,99 +77,387 @@ class AI extends Player {
         return false;
     }
 
-    /** Return a move for me from the current position, assuming there
-     *  is a move. */
-    private Move findMove() {
-        Board board = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(board, maxDepth(board), true, 1, -INFTY, INFTY);
-        } else {
-            findMove(board, maxDepth(board), true, -1, -INFTY, INFTY);
-        }
-        return _lastFoundMove;
-    }
-
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (board.winner() != null || depth == 0) {
-            return staticScore(board);
-        }
-        List<Move> moveit = board.legalMoves(board.turn());
-        for (Move move: moveit) {
-            board.makeMove(move);
-            int val = findMove(board, depth - 1, false, -sense, alpha, beta);
-            if (sense == -1) {
-                if (beta > val) {
-                    beta = val;
-                    if (saveMove) {
-                        _lastFoundMove = move;
-                    }
-                }
-                if (alpha >= beta) {
-                    board.undo();
-                    return val;
-                }
-            } else if (sense == 1) {
-                if (alpha < val) {
-                    alpha = val;
-                    if (saveMove) {
-                        _lastFoundMove = move;
-                    }
-                }
-                if (alpha >= beta) {
-                    board.undo();
-                    return val;
+    @Override
+    void stopPondering() {
+        if (_pondering != null) {
+            _stop.set(true);
+            waitFor(_pondering);
+            _pondering = null;
+        }
+    }
+
+    @Override
+    void close() {
+        stopPondering();
+        shutdown(_helperPool);
+        shutdown(_ybwPool);
+        shutdown(_ponderPool);
+        _helperPool = _ponderPool = null;
+        _ybwPool = null;
+        _search = null;
+        _analyst = null;
+    }
+
+    /** Shut down POOL, if it is not null. */
+    private static void shutdown(ExecutorService pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /** Return a move for the side to move in POSITION, assuming there is
+     *  a move.  Searches to increasing depths until the time budget for
+     *  this move runs out (or to _config.depthLimit, if positive), and
+     *  returns the best move of the deepest search that completed. */
+    Move findMove(Board position) {
+        _start = System.currentTimeMillis();
+        _budget = _time.budget(position, position.turn());
+        _stop.set(false);
+        Move mv = search(position, _start + _budget);
+        _time.used(System.currentTimeMillis() - _start);
+        return mv;
+    }
+
+    /** Search POSITION, in which the side to move has a move, to
+     *  increasing depths until DEADLINE (as from
+     *  System.currentTimeMillis), or until _stop (which the caller must
+     *  clear beforehand) is set, or until more than half of _budget
+     *  milliseconds have passed since _start at the end of an iteration,
+     *  and return the best move of the deepest search that completed,
+     *  or null if there was none.  With the "smp" engine, any helper
+     *  searchers search the same position meanwhile, sharing the
+     *  transposition table; helper k starts at depth 2 - k % 2, so that
+     *  half of them (starting with the first) stay a ply ahead of my own
+     *  search.  Only my own search chooses the move. */
+    private Move search(Board position, long deadline) {
+        if (_search == null) {
+            createSearch();
+        }
+        _table.newSearch();
+        _search.start(new Board(position), deadline);
+        Future<?>[] helping = new Future<?>[_helpers.length];
+        for (int k = 0; k < _helpers.length; k += 1) {
+            Searcher helper = _helpers[k];
+            int firstDepth = 2 - k % 2;
+            helper.start(new Board(position), Long.MAX_VALUE);
+            helping[k] = _helperPool.submit(() -> helper.think(firstDepth));
+        }
+        int maxDepth = _config.depthLimit > 0
+            ? Math.min(_config.depthLimit, Searcher.MAX_DEPTH)
+            : Searcher.MAX_DEPTH;
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            if (!_search.iterate(depth)
+                || Math.abs(_search.value()) >= Searcher.WILL_WIN_VALUE
+                || 2 * (System.currentTimeMillis() - _start) > _budget) {
+                break;
+            }
+        }
+        _stop.set(true);
+        long nodes = _search.nodes();
+        for (int k = 0; k < helping.length; k += 1) {
+            waitFor(helping[k]);
+            nodes += _helpers[k].nodes();
+        }
+        _nodes = nodes;
+        List<Move> pv = _search.principalVariation();
+        if (pv.isEmpty()) {
+            return null;
+        }
+        if (_controller != null) {
+            _controller.logComment("depth %d value %d nodes %d pv %s",
+                                   _search.depth(), _search.value(),
+                                   nodes, pv);
+        }
+        return pv.get(0);
+    }
+
+    /** Return the best move for POSITION according to
+     *  _config.tablebases, or null if they do not cover it or it is
+     *  drawn: the move to the nearest loss for the opponent if the side
+     *  to move wins, and otherwise the one to the most distant win.
+     *  Stops any pondering if there is a move. */
+    private Move tablebaseMove(Board position) {
+        Tablebase tables = _config.tablebases;
+        if (tables == null || position.winner() != null
+            || tables.probe(position) <= 0) {
+            return null;
+        }
+        Board board = new Board(position);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.generateMoves(board.turn(), moves, 0);
+        int best = StagedMoves.NO_MOVE, bestValue = Integer.MIN_VALUE;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            int value;
+            if (board.winner() == position.turn()) {
+                value = Integer.MAX_VALUE;
+            } else if (board.winner() != null) {
+                value = Integer.MIN_VALUE + 1;
+            } else {
+                int code = tables.probe(board);
+                if (code < 0) {
+                    value = Integer.MIN_VALUE + 1;
+                } else if (code == 0) {
+                    value = 0;
+                } else if (code % 2 == 1) {
+                    value = Integer.MAX_VALUE - 1 - code;
+                } else {
+                    value = Integer.MIN_VALUE + 2 + code;
                 }
             }
             board.undo();
+            if (value > bestValue) {
+                best = moves[k];
+                bestValue = value;
+            }
+        }
+        if (best == StagedMoves.NO_MOVE) {
+            return null;
         }
-        if (sense == 1) {
-            return alpha;
+        stopPondering();
+        if (_controller != null) {
+            _controller.logComment("tablebase move");
         }
-        return beta;
+        return Move.mv(best);
     }
 
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
-    private static int maxDepth(Board board) {
-        int val = (2 * board.SIZE + 2) * 2;
-        int val2 = val + (3 * board.SIZE);
-        int movecount = board.moveCount();
-        if (movecount <= val) {
-            return 1;
-        } else if (movecount >= val2) {
-            return 5;
-        } else {
-            return 3;
+    /** Return the move recommended for POSITION by _config.book, or null
+     *  if there is no book or it has no legal move for POSITION.  Stops
+     *  any pondering if there is a move. */
+    private Move bookMove(Board position) {
+        if (_config.book == null) {
+            return null;
+        }
+        int move = _config.book.probe(position.hashKey());
+        if (move == StagedMoves.NO_MOVE
+            || !position.isLegal(Square.sq(Move.from(move)),
+                                 Square.sq(Move.to(move)))) {
+            return null;
+        }
+        stopPondering();
+        if (_controller != null) {
+            _controller.logComment("book move");
         }
+        return Move.mv(move);
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Piece win = board.winner();
-        if (win == WHITE) {
-            return WINNING_VALUE;
-        } else if (win == BLACK) {
-            return -WINNING_VALUE;
+    /** Start searching, on my pondering thread, the position that my
+     *  last search expects to follow my move MV in POSITION, if it
+     *  expects one, so that the search may continue after the
+     *  opponent's reply if it is the one predicted. */
+    private void startPondering(Board position, Move mv) {
+        if (_search == null) {
+            return;
+        }
+        List<Move> pv = _search.principalVariation();
+        if (pv.size() < 2 || !pv.get(0).equals(mv)) {
+            return;
+        }
+        Board ponder = new Board(position);
+        ponder.makeMove(mv);
+        if (ponder.winner() != null) {
+            return;
+        }
+        ponder.makeMove(pv.get(1));
+        if (ponder.winner() != null) {
+            return;
+        }
+        if (_ponderPool == null) {
+            _ponderPool = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        _ponderKey = ponder.hashKey();
+        _start = System.currentTimeMillis();
+        _budget = Long.MAX_VALUE / 2;
+        _stop.set(false);
+        _pondering = _ponderPool.submit(() -> search(ponder,
+                                                     Long.MAX_VALUE));
+    }
+
+    /** Return the move found by pondering if POSITION is the one being
+     *  pondered (a ponder hit), after letting the search continue for up
+     *  to the time budget for this move, or null otherwise.  A search of
+     *  any other position is stopped (a ponder miss); its results remain
+     *  in the transposition table. */
+    private Move ponderResult(Board position) {
+        if (_pondering == null) {
+            return null;
+        }
+        if (position.hashKey() != _ponderKey) {
+            stopPondering();
+            return null;
+        }
+        long budget = _time.budget(position, position.turn());
+        _start = System.currentTimeMillis();
+        _budget = budget;
+        Move mv;
+        try {
+            mv = _pondering.get(budget, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException excp) {
+            _stop.set(true);
+            mv = waitFor(_pondering);
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        _pondering = null;
+        _time.used(System.currentTimeMillis() - _start);
+        return mv;
+    }
+
+    /** Return true iff my searchers must stop: because _stop is set, or
+     *  because I have been told to move now and my own search has
+     *  completed at least one iteration, so that it has a move. */
+    private boolean stopRequested() {
+        return _stop.get() || _moveNow.get() && _search.depth() > 0;
+    }
+
+    /** Return true iff my analyst must stop: because _stop is set, or
+     *  because I have been told to finish now and it has completed at
+     *  least one iteration, so that it has variations. */
+    private boolean analysisStopRequested() {
+        return _stop.get() || _moveNow.get() && _analyst.depth() > 0;
+    }
+
+    /** Return the result of FUTURE, waiting for it if need be. */
+    private static <T> T waitFor(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Create my transposition table and the search engine given by
+     *  _config, with its threads. */
+    private void createSearch() {
+        _table = new TranspositionTable(_config.hashMegabytes);
+        if (_config.engine.equals("ybw")) {
+            _ybwPool = new ForkJoinPool(_config.threads);
+            _search = new YoungBrothersSearch(_config, _table, _ybwPool,
+                                              this::stopRequested);
+            _helpers = new Searcher[0];
         } else {
-            List<Move> movewhite = board.legalMoves(WHITE);
-            List<Move> moveblack = board.legalMoves(BLACK);
-            List<Move> moveking = board.legalMoves(KING);
-            int whitenum = movewhite.size();
-            int blacknum = moveblack.size();
-            int kingnum = moveking.size();
-            return whitenum + kingnum - blacknum;
+            _search = new Searcher(_config, _table, this::stopRequested);
+            _helpers = new Searcher[Math.max(0, _config.threads - 1)];
+            for (int k = 0; k < _helpers.length; k += 1) {
+                _helpers[k] =
+                    new Searcher(_config, _table, this::stopRequested);
+            }
+            if (_helpers.length > 0) {
+                _helperPool =
+                    Executors.newFixedThreadPool(_helpers.length, r -> {
+                        Thread thread = new Thread(r, "search helper");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            }
         }
     }
-}
 
+    @Override
+    boolean canAnalyze() {
+        return true;
+    }
+
+    @Override
+    List<Variation> analyze(int count) {
+        return analyze(count, new AtomicBoolean());
+    }
+
+    @Override
+    List<Variation> analyze(int count, AtomicBoolean moveNow) {
+        _moveNow = moveNow;
+        List<Variation> variations = analyze(board(), count);
+        _moveNow = new AtomicBoolean();
+        return variations;
+    }
+
+    /** Return a new list of up to COUNT of the best moves for the side
+     *  to move in POSITION, which must have a move, best first, each with
+     *  its value (for the side to move) and principal variation.  Searches to
+     *  increasing depths for _config.moveTime milliseconds (or to
+     *  _config.depthLimit, if positive) with a Searcher of its own
+     *  sharing my transposition table; see Searcher.iterateVariations.
+     *  Stops any pondering first. */
+    List<Variation> analyze(Board position, int count) {
+        stopPondering();
+        if (_search == null) {
+            createSearch();
+        }
+        if (_analyst == null) {
+            _analyst =
+                new Searcher(_config, _table, this::analysisStopRequested);
+        }
+        long start = System.currentTimeMillis();
+        _table.newSearch();
+        _stop.set(false);
+        _analyst.start(new Board(position), start + _config.moveTime);
+        int maxDepth = _config.depthLimit > 0
+            ? Math.min(_config.depthLimit, Searcher.MAX_DEPTH)
+            : Searcher.MAX_DEPTH;
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            if (!_analyst.iterateVariations(depth, count)
+                || 2 * (System.currentTimeMillis() - start)
+                   > _config.moveTime) {
+                break;
+            }
+        }
+        if (_controller != null) {
+            _controller.logComment("analysis depth %d nodes %d",
+                                   _analyst.depth(), _analyst.nodes());
+        }
+        return new ArrayList<>(_analyst.variations());
+    }
+
+    /** Return the principal variation found by my last search: the moves
+     *  it expects both sides to play, starting with mine. */
+    List<Move> principalVariation() {
+        return _search.principalVariation();
+    }
+
+    /** Return the number of nodes visited by my last search, including
+     *  those of any helpers. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** My search engine (created on first use, so that templates do not
+     *  allocate one). */
+    private RootSearch _search;
+    /** Searcher used by analyze, or null until needed. */
+    private Searcher _analyst;
+    /** Searchers that help mine on other threads. */
+    private Searcher[] _helpers;
+    /** Threads that run _helpers, or null if there are none. */
+    private ExecutorService _helperPool;
+    /** Threads that run the ybw engine's tasks, or null if there are
+     *  none. */
+    private ForkJoinPool _ybwPool;
+    /** Set to stop all my searchers. */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+    /** Set when my current move must be made as soon as possible (see
+     *  Player.myMove(AtomicBoolean)). */
+    private volatile AtomicBoolean _moveNow = new AtomicBoolean();
+    /** Results of earlier searches, shared by all my searchers. */
+    private TranspositionTable _table;
+    /** Settings for my search. */
+    private final SearchConfig _config;
+    /** Decides how long I think about each move. */
+    private final TimeControl _time;
+    /** Number of nodes visited by my last search, including helpers. */
+    private volatile long _nodes;
+    /** Time (as from System.currentTimeMillis) at which the current
+     *  search began, or at which a ponder hit was found. */
+    private volatile long _start;
+    /** Time allowed for the current search, in milliseconds. */
+    private volatile long _budget;
+    /** Runs my pondering search, or null if I have not pondered. */
+    private ExecutorService _ponderPool;
+    /** My pondering search, or null if I am not pondering. */
+    private Future<Move> _pondering;
+    /** Hash key (see Board.hashKey) of the position being pondered. */
+    private long _ponderKey;
+}
@@ -0,0 +1,86 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Compares the parallel search engines: times each engine searching the
+ *  same positions to a fixed depth with 1, 2, 4, ... threads, and reports
+ *  its speedup over one thread.
+ *  @author Abel Yagubyan
+ */
+public class Benchmark {
+
+    /** Default search depth. */
+    private static final int DEFAULT_DEPTH = 5;
+    /** Default number of positions searched. */
+    private static final int DEFAULT_POSITIONS = 8;
+    /** Seed of the random games that produce the positions. */
+    private static final long SEED = 61;
+    /** The random games producing the positions are between this many
+     *  and twice this many moves long. */
+    private static final int MIN_PLIES = 8;
+
+    /** Run the benchmark.  ARGS are the search depth, the number of
+     *  positions, and the largest number of threads, in that order; each
+     *  may be omitted, defaulting to DEFAULT_DEPTH, DEFAULT_POSITIONS and
+     *  the number of available processors. */
+    public static void main(String... args) {
+        int depth = args.length > 0
+            ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        int count = args.length > 1
+            ? Integer.parseInt(args[1]) : DEFAULT_POSITIONS;
+        int maxThreads = args.length > 2
+            ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        List<Board> positions = positions(count);
+        System.out.printf("depth %d, %d positions%n", depth, count);
+        System.out.printf("%-6s %7s %10s %12s %8s%n",
+                          "engine", "threads", "ms", "nodes", "speedup");
+        for (String engine : new String[] { "smp", "ybw" }) {
+            long base = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                SearchConfig config = new SearchConfig();
+                config.engine = engine;
+                config.threads = threads;
+                config.depthLimit = depth;
+                config.moveTime = Long.MAX_VALUE / 4;
+                long time = 0, nodes = 0;
+                for (Board position : positions) {
+                    AI ai = new AI(config);
+                    long start = System.nanoTime();
+                    ai.findMove(position);
+                    time += System.nanoTime() - start;
+                    nodes += ai.nodes();
+                    ai.close();
+                }
+                if (threads == 1) {
+                    base = time;
+                }
+                System.out.printf("%-6s %7d %10d %12d %8.2f%n",
+                                  engine, threads, time / 1_000_000, nodes,
+                                  (double) base / time);
+            }
+        }
+        System.exit(0);
+    }
+
+    /** Return COUNT positions, each reached by a random game that has not
+     *  ended. */
+    private static List<Board> positions(int count) {
+        Random random = new Random(SEED);
+        List<Board> result = new ArrayList<>();
+        while (result.size() < count) {
+            Board board = new Board();
+            int plies = MIN_PLIES + random.nextInt(MIN_PLIES + 1);
+            for (int k = 0; k < plies && board.winner() == null; k += 1) {
+                List<Move> moves = board.legalMoves(board.turn());
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (board.winner() == null) {
+                result.add(board);
+            }
+        }
+        return result;
+    }
+}
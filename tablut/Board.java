@@ -1,10 +1,11 @@
 package tablut;
-import java.util.HashSet;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.Stack;
 import java.util.List;
 import java.util.Formatter;
 import java.util.ArrayList;
+import java.util.function.IntConsumer;
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
@@ -18,6 +19,10 @@ class Board {
     /** The number of squares on a side of the board. */
     static final int SIZE = 9;
 
+    /** The number of squares held by the first word of an occupancy
+     *  set. */
+    private static final int WORD_SIZE = 64;
+
     /** The throne (or castle) square and its four surrounding squares.. */
     static final Square THRONE = sq(4, 4),
             NTHRONE = sq(4, 5),
@@ -64,10 +69,35 @@ class Board {
         this._repeated = model._repeated;
         this._moveCount = model._moveCount;
         this._winner = model._winner;
-        this._changepass = model._changepass;
-        this._movelasts = model._movelasts;
-        this._pospieces = new HashMap<Integer, Piece>();
-        this._pospieces = hashMapcop(model._pospieces);
+        this._limOfMove = model._limOfMove;
+        this._kingSquare = model._kingSquare;
+        this._plyStates = Arrays.copyOf(model._plyStates,
+                                        model._plyStates.length);
+        this._journal = Arrays.copyOf(model._journal,
+                                      model._journal.length);
+        this._journalSize = model._journalSize;
+        this._moveStart = false;
+        this._positions = Arrays.copyOf(model._positions,
+                                        model._positions.length);
+        this._captureFloors = Arrays.copyOf(model._captureFloors,
+                                            model._captureFloors.length);
+        this._positionCount = model._positionCount;
+        this._key = model._key;
+        this._black0 = model._black0;
+        this._black1 = model._black1;
+        this._white0 = model._white0;
+        this._white1 = model._white1;
+        this._king0 = model._king0;
+        this._king1 = model._king1;
+        for (int s = 0; s < 2; s += 1) {
+            System.arraycopy(model._pieceList[s], 0, this._pieceList[s], 0,
+                             model._pieceCount[s]);
+        }
+        System.arraycopy(model._pieceCount, 0, this._pieceCount, 0, 2);
+        System.arraycopy(model._pieceSlot, 0, this._pieceSlot, 0,
+                         NUM_SQUARES);
+        System.arraycopy(model._rowOcc, 0, this._rowOcc, 0, SIZE);
+        System.arraycopy(model._colOcc, 0, this._colOcc, 0, SIZE);
     }
 
     /** Clears the board to the initial position. */
@@ -75,28 +105,45 @@ class Board {
         _repeated = false;
         _moveCount = 0;
         _turn = BLACK;
-        _pospieces = new HashMap<Integer, Piece>();
         _winner = null;
-        _changepass = new Stack<Helper>();
-        _movelasts = new HashSet<String>();
-        for (Square help: SQUARE_LIST) {
-            switch (classif(help)) {
-            case 1:
-                _pospieces.put(help.index(), BLACK);
-                break;
-            case 2:
-                _pospieces.put(help.index(), WHITE);
-                break;
-            case 3:
-                _pospieces.put(help.index(), KING);
-                break;
-            case 4:
-                _pospieces.put(help.index(), EMPTY);
-                break;
-            default:
-                throw new Error("Initialization is wrong!");
-            }
+        _journal = new int[INITIAL_JOURNAL];
+        _journalSize = 0;
+        _moveStart = false;
+        _positions = new long[INITIAL_HISTORY];
+        _captureFloors = new int[INITIAL_HISTORY];
+        _positionCount = 0;
+        _key = 0;
+        _black0 = _black1 = _white0 = _white1 = _king0 = _king1 = 0;
+        _pieceCount[0] = _pieceCount[1] = 0;
+        _kingSquare = -1;
+        Arrays.fill(_rowOcc, 0);
+        Arrays.fill(_colOcc, 0);
+        _plyStates = new int[INITIAL_HISTORY];
+        for (Square sq : INITIAL_ATTACKERS) {
+            put(BLACK, sq);
         }
+        for (Square sq : INITIAL_DEFENDERS) {
+            put(WHITE, sq);
+        }
+        put(KING, THRONE);
+    }
+
+    /** Clears the board to an empty position with SIDE to move, no moves
+     *  made, and no winner, ready for pieces to be put on it. */
+    void clear(Piece side) {
+        _repeated = false;
+        _moveCount = 0;
+        _turn = side;
+        _winner = null;
+        _journalSize = 0;
+        _moveStart = false;
+        _positionCount = 0;
+        _key = side == WHITE ? TURN_KEY : 0;
+        _black0 = _black1 = _white0 = _white1 = _king0 = _king1 = 0;
+        _pieceCount[0] = _pieceCount[1] = 0;
+        _kingSquare = -1;
+        Arrays.fill(_rowOcc, 0);
+        Arrays.fill(_colOcc, 0);
     }
 
     /** Set the move limit to LIM.  It is an error if 2*LIM <= moveCount().
@@ -105,6 +152,12 @@ class Board {
         _limOfMove = n;
     }
 
+    /** Return the move limit set by setMoveLimit, or 0 if there is
+     *  none. */
+    int moveLimit() {
+        return _limOfMove;
+    }
+
     /** Return a Piece representing whose move it is (WHITE or BLACK). */
     Piece turn() {
         return _turn;
@@ -121,28 +174,46 @@ class Board {
         return _repeated;
     }
 
-    /** Saves moves.
-     * @param move */
-    public void saveMove(String move) {
-        _movelasts.add(move);
+    /** Return the Zobrist hash of the current position, which covers the
+     *  contents of every square and the side to move.  Equal positions
+     *  always have equal keys. */
+    long hashKey() {
+        return _key;
     }
 
-    /** Record current position and set winner() next mover if the current
-     *  position is a repeat. */
+    /** Record the current position, which CAPTURED pieces if true, in the
+     *  history of positions. */
+    private void pushPosition(boolean captured) {
+        if (_positionCount == _positions.length) {
+            _positions = Arrays.copyOf(_positions, 2 * _positionCount);
+            _captureFloors = Arrays.copyOf(_captureFloors,
+                                           2 * _positionCount);
+        }
+        _positions[_positionCount] = _key;
+        _captureFloors[_positionCount] =
+            captured || _positionCount == 0 ? _positionCount
+            : _captureFloors[_positionCount - 1];
+        _positionCount += 1;
+    }
+
+    /** Set winner() next mover if the current position, which must just
+     *  have been recorded with pushPosition, is a repeat.  Only positions
+     *  since the last capture can match, so the scan stops there. */
     private void checkRepeated() {
-        String movecurr = encodedBoard();
-
-        Boolean notrep = _movelasts.add(movecurr);
-        if (!notrep) {
-            if (movecurr.equals(str1)) {
-                _repeated = true;
-                _winner = _turn;
-            } else if (movecurr.equals(str2)) {
-                _repeated = true;
-                _winner = _turn;
-            } else {
-                _repeated = true;
-                _winner = _turn.opponent();
+        int last = _positionCount - 1;
+        for (int k = last - 1; k >= _captureFloors[last]; k -= 1) {
+            if (_positions[k] == _key) {
+                if (_key == STR1_KEY) {
+                    _repeated = true;
+                    _winner = _turn;
+                } else if (_key == STR2_KEY) {
+                    _repeated = true;
+                    _winner = _turn;
+                } else {
+                    _repeated = true;
+                    _winner = _turn.opponent();
+                }
+                return;
             }
         }
     }
@@ -154,19 +225,13 @@ class Board {
         if (!from.isRookMove(to)) {
             return false;
         }
-        int path = from.direction(to);
-        for (int x = 1; x < 10; x += 1) {
-            Square square = from.rookMove(path, x);
-            if (square == null) {
-                throw new Error("Your isUnblockedMove is wrong!");
-            }
-            if (square == to) {
-                return get(square).equals(EMPTY);
-            } else if (!(get(square).equals(EMPTY))) {
-                return false;
-            }
+        if (from.row() == to.row()) {
+            return (LINE_MOVES[from.col()][_rowOcc[from.row()]]
+                    & (1 << to.col())) != 0;
+        } else {
+            return (LINE_MOVES[from.row()][_colOcc[from.col()]]
+                    & (1 << to.row())) != 0;
         }
-        throw new Error("Your isUnblockedMove is wrong!");
     }
 
     /** Returns if _repeated is true. */
@@ -182,13 +247,7 @@ class Board {
 
     /** Return location of the king. */
     Square kingPosition() {
-        for (int key: _pospieces.keySet()) {
-            Piece piece = _pospieces.get(key);
-            if (_pospieces.get(key).equals(KING)) {
-                return sq(key);
-            }
-        }
-        return null;
+        return _kingSquare < 0 ? null : sq(_kingSquare);
     }
 
     /** Return the contents the square at S. */
@@ -196,38 +255,66 @@ class Board {
         return get(s.col(), s.row());
     }
 
-    /** Move FROM-TO, assuming this is a legal move. */
+    /** Move FROM-TO, assuming this is a legal move.  If the move does not
+     *  otherwise decide the game and leaves the opponent with no legal
+     *  move, the opponent loses. */
     void makeMove(Square from, Square to) {
         if (isLegal(from, to)) {
-            boolean movecontains = hasMove(_turn);
-            if (!movecontains) {
-                _winner = _turn.opponent();
-            }
-            Helper help = new Helper(null, null, true);
-            _changepass.push(help);
+            savePlyState();
+            _moveStart = true;
             Piece piece = get(from);
             revPut(EMPTY, from);
             revPut(piece, to);
-            capture(to);
+            boolean captured = capture(to);
             _moveCount += 1;
-            Square setking = kingPosition();
-            if (setking == null) {
+            if (_kingSquare < 0) {
                 _winner = BLACK;
+                pushPosition(captured);
+                return;
+            } else if (sq(_kingSquare).isEdge()) {
+                _winner = WHITE;
+                pushPosition(captured);
                 return;
-            } else {
-                if (setking.isEdge()) {
-                    _winner = WHITE;
-                    return;
-                }
             }
             if (_moveCount == _limOfMove * 2) {
                 _winner = _turn.opponent();
             }
             _turn = _turn.opponent();
+            _key ^= TURN_KEY;
+            pushPosition(captured);
             checkRepeated();
+            if (_winner == null && !hasAnyMove(_turn)) {
+                _winner = _turn.opponent();
+            }
         }
     }
 
+    /** Give the move to the opponent without changing the position: a
+     *  "null move", used by the AI's search.  It is not recorded as a
+     *  move and must be taken back by undoNullMove before any other
+     *  move is undone.  The game must not be over. */
+    void makeNullMove() {
+        _turn = _turn.opponent();
+        _key ^= TURN_KEY;
+    }
+
+    /** Take back the null move made by makeNullMove. */
+    void undoNullMove() {
+        makeNullMove();
+    }
+
+    /** Record the turn, winner and repetition status in effect before the
+     *  move about to be made, so that undo can restore them. */
+    private void savePlyState() {
+        if (_moveCount >= _plyStates.length) {
+            _plyStates = Arrays.copyOf(_plyStates, 2 * _moveCount + 1);
+        }
+        Piece winner = _winner == null ? EMPTY : _winner;
+        _plyStates[_moveCount] = _turn.ordinal()
+            | winner.ordinal() << STATE_WINNER_SHIFT
+            | (_repeated ? STATE_REPEATED : 0);
+    }
+
     /** A helper method that converts.
      * @param col column
      * @param row row
@@ -239,7 +326,38 @@ class Board {
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return _pospieces.get(toIndex(col, row));
+        return get(toIndex(col, row));
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    final Piece get(int index) {
+        long m0 = bit0(index), m1 = bit1(index);
+        if (((_black0 & m0) | (_black1 & m1)) != 0) {
+            return BLACK;
+        } else if (((_white0 & m0) | (_white1 & m1)) != 0) {
+            return WHITE;
+        } else if (((_king0 & m0) | (_king1 & m1)) != 0) {
+            return KING;
+        }
+        return EMPTY;
+    }
+
+    /** Return true iff the square with index INDEX holds any piece. */
+    final boolean occupied(int index) {
+        return (((_black0 | _white0 | _king0) & bit0(index))
+                | ((_black1 | _white1 | _king1) & bit1(index))) != 0;
+    }
+
+    /** Return the mask for square INDEX within the first occupancy word
+     *  (zero if INDEX lies in the second). */
+    private static long bit0(int index) {
+        return index < WORD_SIZE ? 1L << index : 0;
+    }
+
+    /** Return the mask for square INDEX within the second occupancy word
+     *  (zero if INDEX lies in the first). */
+    private static long bit1(int index) {
+        return index < WORD_SIZE ? 0 : 1L << (index - WORD_SIZE);
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -249,15 +367,112 @@ class Board {
 
     /** Set square S to P. */
     final void put(Piece p, Square s) {
-        _pospieces.replace(s.index(), p);
+        put(p, s.index());
+    }
+
+    /** Set the square with index INDEX to P. */
+    private void put(Piece p, int index) {
+        Piece old = get(index);
+        if (old == p) {
+            return;
+        }
+        long m0 = bit0(index), m1 = bit1(index);
+        _key ^= PIECE_KEYS[old.ordinal()][index]
+            ^ PIECE_KEYS[p.ordinal()][index];
+        if (old != EMPTY) {
+            removePiece(sideIndex(old), index);
+        }
+        if (p != EMPTY) {
+            addPiece(sideIndex(p), index);
+        }
+        if (p == KING) {
+            _kingSquare = index;
+        } else if (old == KING) {
+            _kingSquare = -1;
+        }
+        int col = index % SIZE, row = index / SIZE;
+        if (p == EMPTY) {
+            _rowOcc[row] &= ~(1 << col);
+            _colOcc[col] &= ~(1 << row);
+        } else {
+            _rowOcc[row] |= 1 << col;
+            _colOcc[col] |= 1 << row;
+        }
+        _black0 &= ~m0;
+        _black1 &= ~m1;
+        _white0 &= ~m0;
+        _white1 &= ~m1;
+        _king0 &= ~m0;
+        _king1 &= ~m1;
+        switch (p) {
+        case BLACK:
+            _black0 |= m0;
+            _black1 |= m1;
+            break;
+        case WHITE:
+            _white0 |= m0;
+            _white1 |= m1;
+            break;
+        case KING:
+            _king0 |= m0;
+            _king1 |= m1;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Add the square with index INDEX to the piece list of side S. */
+    private void addPiece(int s, int index) {
+        _pieceSlot[index] = _pieceCount[s];
+        _pieceList[s][_pieceCount[s]] = index;
+        _pieceCount[s] += 1;
+    }
+
+    /** Remove the square with index INDEX from the piece list of side S,
+     *  moving the last entry of the list into its slot. */
+    private void removePiece(int s, int index) {
+        _pieceCount[s] -= 1;
+        int last = _pieceList[s][_pieceCount[s]];
+        _pieceList[s][_pieceSlot[index]] = last;
+        _pieceSlot[last] = _pieceSlot[index];
+    }
+
+    /** Return the index of the piece list holding pieces of SIDE: 0 for
+     *  BLACK and 1 for WHITE or KING. */
+    private static int sideIndex(Piece side) {
+        return side == BLACK ? 0 : 1;
+    }
+
+    /** Return the number of pieces on SIDE (BLACK, or WHITE including the
+     *  king when SIDE is WHITE or KING). */
+    int pieceCount(Piece side) {
+        return _pieceCount[sideIndex(side)];
+    }
+
+    /** Call ACTION on the index of each square holding a piece of SIDE
+     *  (BLACK, or WHITE including the king when SIDE is WHITE or KING).
+     *  ACTION must not modify this board. */
+    void forEachPiece(Piece side, IntConsumer action) {
+        int s = sideIndex(side);
+        int[] list = _pieceList[s];
+        for (int k = _pieceCount[s] - 1; k >= 0; k -= 1) {
+            action.accept(list[k]);
+        }
     }
 
     /** Set square S to P and record for undoing. */
     final void revPut(Piece p, Square s) {
-        Piece laststate = get(s);
-        Helper help = new Helper(laststate, s, false);
-        _changepass.push(help);
-        put(p, s);
+        int index = s.index();
+        if (_journalSize == _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journalSize);
+        }
+        _journal[_journalSize] = index
+            | get(index).ordinal() << JOURNAL_PIECE_SHIFT
+            | (_moveStart ? JOURNAL_MOVE_START : 0);
+        _journalSize += 1;
+        _moveStart = false;
+        put(p, index);
     }
 
     /** Set square COL ROW to P. */
@@ -295,25 +510,47 @@ class Board {
      * @param square square
      * @param p p */
     public boolean hostilesq(Piece p, Square square) {
-        Piece piece = p.side();
-        Piece sqpiece = get(square);
-        Piece sqs = sqpiece.side();
-        boolean help = (square.equals(THRONE));
-        if (help) {
-            int val = 0;
-            for (Square side: SIDE_THRONES) {
-                if (get(side).equals(BLACK)) {
-                    val += 1;
+        return hostile(p, square.index());
+    }
+
+    /** Return true iff the square with index INDEX is hostile to a piece
+     *  of the same side as P.  The throne is hostile when empty, and to
+     *  white when at least three of its side thrones hold black pieces;
+     *  any other square is hostile when it holds an opponent of P. */
+    private boolean hostile(Piece p, int index) {
+        return hostile(p, index, -1, -1, EMPTY);
+    }
+
+    /** Return true iff the square with index INDEX would be hostile to a
+     *  piece of the same side as P (see hostile(P, INDEX)) after MOVER
+     *  moved from the square with index FROM to the one with index TO,
+     *  where FROM and TO are -1 to take the board as it is. */
+    private boolean hostile(Piece p, int index, int from, int to,
+                            Piece mover) {
+        if (index == THRONE_INDEX) {
+            if (p.side() == WHITE) {
+                int blacks = Long.bitCount(_black0 & SIDE_THRONES0)
+                    + Long.bitCount(_black1 & SIDE_THRONES1);
+                if (mover == BLACK) {
+                    blacks += (isSideThrone(to) ? 1 : 0)
+                        - (isSideThrone(from) ? 1 : 0);
+                }
+                if (blacks >= 3) {
+                    return true;
                 }
             }
-            if (val >= 3 && piece.equals(WHITE)) {
-                return true;
-            } else {
-                return sqpiece.equals(EMPTY);
-            }
-        } else {
-            return piece == sqs.opponent();
+            return index != to && (index == from || !occupied(index));
         }
+        Piece occupant =
+            index == to ? mover : index == from ? EMPTY : get(index);
+        return occupant != EMPTY && p.side() == occupant.opponent();
+    }
+
+    /** Return true iff INDEX is the index of a side throne. */
+    private static boolean isSideThrone(int index) {
+        return index >= 0
+            && ((bit0(index) & SIDE_THRONES0)
+                | (bit1(index) & SIDE_THRONES1)) != 0;
     }
 
     /** Return true iff MOVE is a legal move in the current
@@ -354,32 +591,58 @@ class Board {
      * @return capt.
      * @param fromcapt fromcapt*/
     public List<Square> couldtake(Square fromcapt) {
-        Piece piece = get(fromcapt);
         List<Square> capt = new ArrayList<Square>();
-        List<Square> opp = surrOpp(fromcapt);
-        for (Square oppsquare: opp) {
-            Piece oppcurr = get(oppsquare);
-            if (thrown(oppsquare) && oppcurr.equals(KING)) {
-                List<Square> nextking = surrsq(oppsquare);
-                int hostnum = 0;
-                for (Square neighbor: nextking) {
-                    if (hostilesq(oppcurr, neighbor)) {
-                        hostnum += 1;
-                    }
+        int index = fromcapt.index();
+        int dirs = captureDirections(index);
+        for (int dir = 0; dir < 4; dir += 1) {
+            if ((dirs & (1 << dir)) != 0) {
+                capt.add(sq(NEIGHBORS[index][dir]));
+            }
+        }
+        return capt;
+    }
+
+    /** Return the set of directions (bit d for direction d, as for
+     *  Square.rookMove) in which the piece on the square with index TO
+     *  captures the adjacent piece.  Allocates nothing. */
+    private int captureDirections(int to) {
+        return captureDirections(-1, to, get(to));
+    }
+
+    /** Return the set of directions, as for captureDirections(TO), in
+     *  which MOVER, moved from the square with index FROM to the one with
+     *  index TO, would capture the adjacent piece, without changing the
+     *  board.  FROM is -1 if MOVER is already on TO. */
+    private int captureDirections(int from, int to, Piece mover) {
+        int dirs = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            int victimSq = NEIGHBORS[to][dir];
+            if (victimSq < 0 || victimSq == from) {
+                continue;
+            }
+            Piece victim = get(victimSq);
+            if (victim == EMPTY || mover.side() != victim.opponent()) {
+                continue;
+            }
+            if (victim == KING && KING_SURROUNDED[victimSq]) {
+                boolean surrounded = true;
+                for (int d = 0; d < 4 && surrounded; d += 1) {
+                    int neighbor = NEIGHBORS[victimSq][d];
+                    surrounded = neighbor >= 0
+                        && hostile(KING, neighbor, from, to, mover);
                 }
-                if (hostnum == 4) {
-                    capt.add(oppsquare);
+                if (surrounded) {
+                    dirs |= 1 << dir;
                 }
             } else {
-                int path = fromcapt.direction(oppsquare);
-                Square partcapt = fromcapt.rookMove(path, 2);
-                if (partcapt != null
-                        && hostilesq(oppcurr, partcapt)) {
-                    capt.add(oppsquare);
+                int partner = PARTNERS[to][dir];
+                if (partner >= 0
+                    && hostile(victim, partner, from, to, mover)) {
+                    dirs |= 1 << dir;
                 }
             }
         }
-        return capt;
+        return dirs;
     }
 
     /** A helper method that checks if your moves exceed move limit. */
@@ -395,13 +658,24 @@ class Board {
         makeMove(move.from(), move.to());
     }
 
+    /** Move according to the packed move MOVE (see Move.pack), assuming
+     *  it is a legal move. */
+    void makeMove(int move) {
+        makeMove(sq(Move.from(move)), sq(Move.to(move)));
+    }
+
     /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     *  SQ0 and the necessary conditions are satisfied. */
-    private void capture(Square sq0) {
-        List<Square> rem = couldtake(sq0);
-        for (Square sq: rem) {
-            revPut(EMPTY, sq);
+     *  SQ0 and the necessary conditions are satisfied.  Return true iff
+     *  anything was captured. */
+    private boolean capture(Square sq0) {
+        int to = sq0.index();
+        int dirs = captureDirections(to);
+        for (int dir = 0; dir < 4; dir += 1) {
+            if ((dirs & (1 << dir)) != 0) {
+                revPut(EMPTY, sq(NEIGHBORS[to][dir]));
+            }
         }
+        return dirs != 0;
     }
 
     /** Opponent squares.
@@ -428,108 +702,256 @@ class Board {
         return host;
     }
 
-    /** Returns locations on piece.
-     * @param piece piece*/
-    private HashSet<Square> pieceLocations(Piece piece) {
-        assert piece != EMPTY;
-        HashSet<Square> piececoll = new HashSet<Square>();
-        if (piece.equals(WHITE) || piece.equals(KING)) {
-            for (int x = 0; x < SIZE * SIZE; x += 1) {
-                Piece piececurr = get(sq(x));
-                if (piececurr.equals(WHITE) || piececurr.equals(KING)) {
-                    piececoll.add(sq(x));
-                }
-            }
-        } else if (piece.equals(BLACK)) {
-            for (int x = 0; x < SIZE * SIZE; x += 1) {
-                Piece piececurr = get(sq(x));
-                if (piececurr.equals(BLACK)) {
-                    piececoll.add(sq(x));
-                }
-            }
-        } else {
-            throw new Error("Your piecelocations is wrong!");
-        }
-        return piececoll;
-    }
-
-    /** Remove record of current position in the set of positions encountered,
-     *  unless it is a repeated position or we are at the first move. */
+    /** Remove record of current position in the history of positions
+     *  encountered, unless we are at the first move. */
     private void undoPosition() {
-        String mocurr = encodedBoard();
-        boolean rep = _movelasts.contains(mocurr);
-        if (rep && (_movelasts.size() > 0)) {
-            boolean left = _movelasts.remove(mocurr);
-            if (!left) {
-                throw new Error("UndoPosition is wrong!");
-            }
-            _repeated = false;
+        if (_positionCount > 0) {
+            _positionCount -= 1;
         }
     }
 
     /** Undo one move.  Has no effect on the initial board. */
     void undo() {
         if (_moveCount > 0) {
-            this._turn = _turn.opponent();
+            _moveCount -= 1;
+            int state = _plyStates[_moveCount];
+            Piece turn = PIECES[state & STATE_PIECE_MASK];
+            if (turn != _turn) {
+                _turn = turn;
+                _key ^= TURN_KEY;
+            }
+            Piece winner =
+                PIECES[(state >> STATE_WINNER_SHIFT) & STATE_PIECE_MASK];
+            _winner = winner == EMPTY ? null : winner;
+            _repeated = (state & STATE_REPEATED) != 0;
             undoPosition();
-            _winner = null;
-            Helper help = _changepass.pop();
-            boolean sep = help.sepcheck();
-            while (!sep) {
-                Piece piecelast = help.piecefunc();
-                Square set = help.getset();
-                put(piecelast, set);
-                help = _changepass.pop();
-                sep = help.sepcheck();
+            while (_journalSize > 0) {
+                _journalSize -= 1;
+                int entry = _journal[_journalSize];
+                put(PIECES[(entry >> JOURNAL_PIECE_SHIFT) & JOURNAL_PIECE_MASK],
+                    entry & JOURNAL_SQUARE_MASK);
+                if ((entry & JOURNAL_MOVE_START) != 0) {
+                    break;
+                }
             }
-            _moveCount -= 1;
         }
     }
 
     /** String2. */
-    private String str2 = "W---BBB-------B--------W----B---W-W-BBB"
-            + "WWKW-BBB---W--------W--------B---B---BBB---";
+    private static final String STR2 =
+        "W---BBB-------B--------W----B---W-W-BBBWW"
+        + "KW-BBB---W--------W--------B---B---BBB---";
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
         List<Move> movecoll = new ArrayList<Move>();
-        HashSet<Square> piececoll = pieceLocations(side);
-        for (Square sqfrom: piececoll) {
-            SqList[] destcoll = ROOK_SQUARES[sqfrom.index()];
-            for (int x = 0; x < 4; x += 1) {
-                SqList setsquares = destcoll[x];
-                for (Square sqto: setsquares) {
-                    if (isUnblockedMove(sqfrom, sqto)
-                            && sqfrom.isRookMove(sqto)) {
-                        Move thisMove = mv(sqfrom, sqto);
-                        movecoll.add(thisMove);
+        int s = sideIndex(side);
+        int[] dests = new int[MAX_DESTINATIONS];
+        for (int k = 0; k < _pieceCount[s]; k += 1) {
+            Square sqfrom = sq(_pieceList[s][k]);
+            int n = destinations(sqfrom.index(), dests, 0);
+            for (int i = 0; i < n; i += 1) {
+                movecoll.add(mv(sqfrom, sq(dests[i])));
+            }
+        }
+        return movecoll;
+    }
+
+    /** Store the legal moves for SIDE (ignoring whose turn it is) in BUF
+     *  as packed moves (see Move.pack), starting at OFFSET, and return
+     *  the offset just past the last one.  The moves carry no flags.  BUF
+     *  must have room for MAX_MOVES entries after OFFSET. */
+    int generateMoves(Piece side, int[] buf, int offset) {
+        int s = sideIndex(side);
+        int[] list = _pieceList[s];
+        int n = offset;
+        for (int k = 0; k < _pieceCount[s]; k += 1) {
+            int from = list[k];
+            int end = destinations(from, buf, n);
+            for (; n < end; n += 1) {
+                buf[n] = Move.pack(from, buf[n]);
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff the legal packed move MOVE would capture at least
+     *  one piece.  Does not change the board. */
+    boolean isCapture(int move) {
+        int from = Move.from(move);
+        return captureDirections(from, Move.to(move), get(from)) != 0;
+    }
+
+    /** Store the legal moves for SIDE (ignoring whose turn it is) that
+     *  capture at least one piece in BUF as packed moves, flagged with
+     *  Move.CAPTURE, starting at OFFSET, and return the offset just past
+     *  the last one.  Only the empty squares next to opposing pieces are
+     *  considered as destinations, so this is much cheaper than testing
+     *  every move from generateMoves.  BUF must have room for MAX_MOVES
+     *  entries after OFFSET. */
+    int generateCaptures(Piece side, int[] buf, int offset) {
+        int victims = 1 - sideIndex(side);
+        int[] list = _pieceList[victims];
+        long seen0 = 0, seen1 = 0;
+        int n = offset;
+        for (int k = 0; k < _pieceCount[victims]; k += 1) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                int to = NEIGHBORS[list[k]][dir];
+                if (to < 0 || occupied(to)
+                    || ((seen0 & bit0(to)) | (seen1 & bit1(to))) != 0) {
+                    continue;
+                }
+                seen0 |= bit0(to);
+                seen1 |= bit1(to);
+                for (int d = 0; d < 4; d += 1) {
+                    int from = NEIGHBORS[to][d];
+                    while (from >= 0 && !occupied(from)) {
+                        from = NEIGHBORS[from][d];
+                    }
+                    if (from < 0 || get(from).side() != side
+                        || to == THRONE_INDEX && from != _kingSquare) {
+                        continue;
+                    }
+                    int move = Move.pack(from, to);
+                    if (isCapture(move)) {
+                        buf[n] = move | Move.CAPTURE;
+                        n += 1;
                     }
                 }
             }
+        }
+        return n;
+    }
 
+    /** Store in BUF, starting at OFFSET, the indices of all squares the
+     *  piece on the square with index FROM can legally move to, and
+     *  return the offset just past the last one stored.  BUF must have
+     *  room for MAX_DESTINATIONS entries after OFFSET. */
+    int destinations(int from, int[] buf, int offset) {
+        int col = from % SIZE, row = from / SIZE;
+        boolean king = from == _kingSquare;
+        int n = offset;
+        for (int m = LINE_MOVES[col][_rowOcc[row]]; m != 0; m &= m - 1) {
+            int to = row * SIZE + Integer.numberOfTrailingZeros(m);
+            if (king || to != THRONE_INDEX) {
+                buf[n] = to;
+                n += 1;
+            }
         }
-        return movecoll;
+        for (int m = LINE_MOVES[row][_colOcc[col]]; m != 0; m &= m - 1) {
+            int to = Integer.numberOfTrailingZeros(m) * SIZE + col;
+            if (king || to != THRONE_INDEX) {
+                buf[n] = to;
+                n += 1;
+            }
+        }
+        return n;
     }
 
-    /** Return boolean thrown.
-     * @param square square.*/
-    private boolean thrown(Square square) {
-        Square[] sqs = new Square[] {THRONE, NTHRONE, STHRONE, WTHRONE,
-            ETHRONE};
-        for (int x = 0; x < sqs.length - 1; x += 1) {
-            if (square.equals(sqs[x])) {
+    /** Return true iff the king, moved from the square with index FROM to
+     *  the one with index TO, would be on the edge or have an unblocked
+     *  rook move to it. */
+    boolean kingReachesEdge(int from, int to) {
+        int col = to % SIZE, row = to / SIZE;
+        if (col == 0 || row == 0 || col == SIZE - 1 || row == SIZE - 1) {
+            return true;
+        }
+        int rowOcc = _rowOcc[row], colOcc = _colOcc[col];
+        if (from / SIZE == row) {
+            rowOcc &= ~(1 << (from % SIZE));
+        } else {
+            colOcc &= ~(1 << (from / SIZE));
+        }
+        return ((LINE_MOVES[col][rowOcc] | LINE_MOVES[row][colOcc])
+                & EDGE_POSITIONS) != 0;
+    }
+
+    /** Return the number of edge squares the king can reach in one move
+     *  (0 if there is no king). */
+    int kingEscapes() {
+        if (_kingSquare < 0) {
+            return 0;
+        }
+        int col = _kingSquare % SIZE, row = _kingSquare / SIZE;
+        return Integer.bitCount(LINE_MOVES[col][_rowOcc[row]]
+                                & EDGE_POSITIONS)
+            + Integer.bitCount(LINE_MOVES[row][_colOcc[col]]
+                               & EDGE_POSITIONS);
+    }
+
+    /** Return true iff a single black piece moving next to the king
+     *  could capture it: on the throne squares where the king must be
+     *  surrounded, three of its sides are hostile and the fourth is
+     *  empty; elsewhere, one side is hostile and the opposite one empty
+     *  and not hostile. */
+    boolean kingNearCapture() {
+        int king = _kingSquare;
+        if (king < 0) {
+            return false;
+        }
+        if (KING_SURROUNDED[king]) {
+            int hostiles = 0, empty = 0;
+            for (int dir = 0; dir < 4; dir += 1) {
+                int next = NEIGHBORS[king][dir];
+                if (hostile(KING, next)) {
+                    hostiles += 1;
+                } else if (!occupied(next)) {
+                    empty += 1;
+                }
+            }
+            return hostiles == 3 && empty == 1;
+        }
+        for (int dir = 0; dir < 4; dir += 1) {
+            int near = NEIGHBORS[king][dir], far = NEIGHBORS[king][dir ^ 2];
+            if (near >= 0 && far >= 0 && hostile(KING, near)
+                && !occupied(far) && !hostile(KING, far)) {
                 return true;
             }
         }
         return false;
     }
 
+    /** Return the index of the king's square, or -1 if there is no king. */
+    int kingIndex() {
+        return _kingSquare;
+    }
+
+    /** Return the number of legal moves for the piece on the square with
+     *  index FROM. */
+    int mobility(int from) {
+        int col = from % SIZE, row = from / SIZE;
+        int rowMoves = LINE_MOVES[col][_rowOcc[row]],
+            colMoves = LINE_MOVES[row][_colOcc[col]];
+        int result = Integer.bitCount(rowMoves) + Integer.bitCount(colMoves);
+        if (from != _kingSquare) {
+            if (row == THRONE.row()) {
+                result -= (rowMoves >> THRONE.col()) & 1;
+            }
+            if (col == THRONE.col()) {
+                result -= (colMoves >> THRONE.row()) & 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of legal moves for SIDE (ignoring whose turn it
+     *  is), which is the same as legalMoves(SIDE).size(). */
+    int mobility(Piece side) {
+        int s = sideIndex(side);
+        int[] list = _pieceList[s];
+        int result = 0;
+        for (int k = _pieceCount[s] - 1; k >= 0; k -= 1) {
+            result += mobility(list[k]);
+        }
+        return result;
+    }
+
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        _changepass.clear();
-        _movelasts.clear();
+        _journalSize = 0;
+        _positionCount = 0;
     }
 
     /** String 4. */
@@ -546,8 +968,20 @@ class Board {
 
     /** Return true iff SIDE has a legal move. */
     boolean hasMove(Piece side) {
-        int val = legalMoves(side).size();
-        return legalMoves(side).size() != 0;
+        return hasAnyMove(side);
+    }
+
+    /** Return true iff SIDE has a legal move, stopping at the first piece
+     *  found with somewhere to go. */
+    boolean hasAnyMove(Piece side) {
+        int s = sideIndex(side);
+        int[] list = _pieceList[s];
+        for (int k = _pieceCount[s] - 1; k >= 0; k -= 1) {
+            if (mobility(list[k]) > 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -590,8 +1024,7 @@ class Board {
      * @param piece piece
      * @return value */
     public int sidepiece(Piece piece) {
-        HashSet<Square> piececoll = pieceLocations(piece);
-        return piececoll.size();
+        return pieceCount(piece);
     }
 
     /** Return the contents of _board in the order of SQUARE_LIST as a sequence
@@ -605,38 +1038,146 @@ class Board {
         return new String(result);
     }
 
-    /** Deep HashMap Copy.
-     * @param map map.
-     * @return mapval */
-    public static HashMap<Integer, Piece>
-        hashMapcop(HashMap<Integer, Piece> map) {
-        HashMap<Integer, Piece> mapval = new HashMap<Integer, Piece>();
-        for (int key: map.keySet()) {
-            mapval.put(key, map.get(key));
+    /** Return the Zobrist key of ENCODED, a position in the format produced
+     *  by encodedBoard(). */
+    private static long encodedKey(String encoded) {
+        long key = encoded.charAt(0) == 'W' ? TURN_KEY : 0;
+        for (int i = 1; i < encoded.length(); i += 1) {
+            for (Piece p : Piece.values()) {
+                if (p.toString().charAt(0) == encoded.charAt(i)) {
+                    key ^= PIECE_KEYS[p.ordinal()][i - 1];
+                }
+            }
         }
-        return mapval;
+        return key;
     }
 
-    /** Helper method.
-     * @param sq sq.
-     * @return int*/
-    int classif(Square sq) {
-        for (Square sq1: INITIAL_ATTACKERS) {
-            if (sq.equals(sq1)) {
-                return 1;
+    /** PIECE_KEYS[p][i] is the random key of Piece with ordinal p on the
+     *  square with index i.  The keys for EMPTY are 0.  The generator is
+     *  seeded with a constant so that keys are the same from run to run. */
+    private static final long[][] PIECE_KEYS =
+        new long[Piece.values().length][NUM_SQUARES];
+
+    /** Key that is present when it is white's move. */
+    private static final long TURN_KEY;
+
+    static {
+        Random keys = new Random(0x7AB1A7L);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    PIECE_KEYS[p.ordinal()][i] = keys.nextLong();
+                }
             }
         }
-        for (Square sq1: INITIAL_DEFENDERS) {
-            if (sq.equals(sq1)) {
-                return 2;
+        TURN_KEY = keys.nextLong();
+    }
+
+    /** Initial capacity of the position history. */
+    private static final int INITIAL_HISTORY = 64;
+
+    /** Initial capacity of the undo journal. */
+    private static final int INITIAL_JOURNAL = 256;
+
+    /** Layout of an undo journal entry: the square index occupies the
+     *  bits of JOURNAL_SQUARE_MASK, the previous Piece's ordinal the
+     *  bits of JOURNAL_PIECE_MASK above JOURNAL_PIECE_SHIFT, and
+     *  JOURNAL_MOVE_START flags the first entry of each move. */
+    private static final int
+        JOURNAL_SQUARE_MASK = 0x7f,
+        JOURNAL_PIECE_SHIFT = 7,
+        JOURNAL_PIECE_MASK = 0x3,
+        JOURNAL_MOVE_START = 1 << 9;
+
+    /** Layout of an entry of _plyStates: the ordinal of the side to move
+     *  in the bits of STATE_PIECE_MASK, the ordinal of the winner (EMPTY
+     *  for none) in the same number of bits above STATE_WINNER_SHIFT, and
+     *  STATE_REPEATED if the position was a repetition. */
+    private static final int
+        STATE_PIECE_MASK = 0x3,
+        STATE_WINNER_SHIFT = 2,
+        STATE_REPEATED = 1 << 4;
+
+    /** Index of THRONE. */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /** NEIGHBORS[i][d] is the index of the square adjacent to the square
+     *  with index i in direction d (as for Square.rookMove), or -1 if
+     *  there is none.  PARTNERS[i][d] is likewise the square two steps
+     *  away: the far side of a capture by a piece on square i. */
+    private static final int[][]
+        NEIGHBORS = new int[NUM_SQUARES][4],
+        PARTNERS = new int[NUM_SQUARES][4];
+
+    /** KING_SURROUNDED[i] is true iff a king on the square with index i
+     *  is captured only when hostile on all four sides rather than by
+     *  two pieces in line: the throne and the north, south and west side
+     *  thrones. */
+    private static final boolean[] KING_SURROUNDED =
+        new boolean[NUM_SQUARES];
+
+    /** The side thrones (SIDE_THRONES) as an occupancy set, split into
+     *  words as for _black0 and _black1. */
+    private static final long SIDE_THRONES0, SIDE_THRONES1;
+
+    static {
+        for (Square sq : SQUARE_LIST) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                Square next = sq.rookMove(dir, 1),
+                    partner = sq.rookMove(dir, 2);
+                NEIGHBORS[sq.index()][dir] = next == null ? -1 : next.index();
+                PARTNERS[sq.index()][dir] =
+                    partner == null ? -1 : partner.index();
             }
         }
-        if (sq.equals(THRONE)) {
-            return 3;
+        for (Square sq : new Square[] { THRONE, NTHRONE, STHRONE, WTHRONE }) {
+            KING_SURROUNDED[sq.index()] = true;
+        }
+        long sides0 = 0, sides1 = 0;
+        for (Square sq : SIDE_THRONES) {
+            sides0 |= bit0(sq.index());
+            sides1 |= bit1(sq.index());
         }
-        return 4;
+        SIDE_THRONES0 = sides0;
+        SIDE_THRONES1 = sides1;
     }
 
+    /** The largest number of squares a piece can reach in one move. */
+    static final int MAX_DESTINATIONS = 2 * (SIZE - 1);
+
+    /** The positions along a line (as in LINE_MOVES) that are on the
+     *  edge of the board. */
+    private static final int EDGE_POSITIONS = 1 | 1 << (SIZE - 1);
+
+    /** An upper bound on the number of legal moves for one side. */
+    static final int MAX_MOVES = NUM_SQUARES * MAX_DESTINATIONS;
+
+    /** LINE_MOVES[p][occ] is the set of positions (as a SIZE-bit mask)
+     *  reachable by a rook move from position P along a line (rank or
+     *  file) of SIZE squares whose occupied positions are the set bits
+     *  of OCC.  Bit P of OCC itself is ignored. */
+    private static final int[][] LINE_MOVES = new int[SIZE][1 << SIZE];
+
+    static {
+        for (int p = 0; p < SIZE; p += 1) {
+            for (int occ = 0; occ < 1 << SIZE; occ += 1) {
+                int reach = 0;
+                for (int q = p + 1; q < SIZE && (occ & (1 << q)) == 0;
+                     q += 1) {
+                    reach |= 1 << q;
+                }
+                for (int q = p - 1; q >= 0 && (occ & (1 << q)) == 0;
+                     q -= 1) {
+                    reach |= 1 << q;
+                }
+                LINE_MOVES[p][occ] = reach;
+            }
+        }
+    }
+
+    /** All Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
     /** Piece whose turn it is (WHITE or BLACK). */
     private Piece _turn;
     /** Cached value of winner on this board, or null if it has not been
@@ -649,16 +1190,56 @@ class Board {
     /** Stack of past white moves. */
     private Stack<String> _whiteMove;
     /** String1. */
-    private String str1 = "B---BBB-------B--------WW---B---W---BBBWWK"
-            + "-WBBB---WB-------W--------B-------BBB---";
-    /** Hashmap of position pieces.*/
-    private HashMap<Integer, Piece> _pospieces;
+    private static final String STR1 =
+        "B---BBB-------B--------WW---B---W---BBBWW"
+        + "K-WBBB---WB-------W--------B-------BBB---";
+    /** Keys of STR1 and STR2. */
+    private static final long STR1_KEY = encodedKey(STR1),
+        STR2_KEY = encodedKey(STR2);
+    /** Occupancy sets of black pieces, white pieces (other than the king)
+     *  and the king.  Each is an 81-bit set split across two words: the
+     *  square with index I is bit I of the first word if I < WORD_SIZE,
+     *  and bit I - WORD_SIZE of the second otherwise. */
+    private long _black0, _black1, _white0, _white1, _king0, _king1;
     /** Number of moves. */
     private int _limOfMove;
-    /** Hashset of previous moves. */
-    private HashSet<String> _movelasts;
-    /** Helper Stack. */
-    private Stack<Helper> _changepass;
+    /** _rowOcc[r] has bit c set iff the square at column c, row r is
+     *  occupied; _colOcc[c] has bit r set under the same condition. */
+    private final int[] _rowOcc = new int[SIZE], _colOcc = new int[SIZE];
+    /** Index of the square holding the king, or -1 if it was captured. */
+    private int _kingSquare;
+    /** _plyStates[k] is the packed turn, winner and repetition status in
+     *  effect before move k (see savePlyState). */
+    private int[] _plyStates;
+    /** _pieceList[s] holds, in its first _pieceCount[s] entries, the
+     *  indices of the squares occupied by side s (0 for black, 1 for
+     *  white and the king), in no particular order. */
+    private final int[][] _pieceList = new int[2][NUM_SQUARES];
+    /** Number of pieces of each side. */
+    private final int[] _pieceCount = new int[2];
+    /** _pieceSlot[i] is the position of square i in the piece list of
+     *  its occupant; meaningless for empty squares. */
+    private final int[] _pieceSlot = new int[NUM_SQUARES];
+    /** Keys of the positions reached by the moves not yet undone, in
+     *  order.  Only the first _positionCount entries are valid. */
+    private long[] _positions;
+    /** _captureFloors[k] is the index in _positions of the most recent
+     *  position at or before _positions[k] that followed a capture (or
+     *  0).  No position before it can recur after it. */
+    private int[] _captureFloors;
+    /** Number of valid entries in _positions and _captureFloors. */
+    private int _positionCount;
+    /** Zobrist key of the current position. */
+    private long _key;
+    /** Undo journal: one entry per square changed by revPut, holding the
+     *  square index, the ordinal of the Piece it held before, and
+     *  JOURNAL_MOVE_START on the first change made by each move.  Only
+     *  the first _journalSize entries are valid. */
+    private int[] _journal;
+    /** Number of valid entries in _journal. */
+    private int _journalSize;
+    /** True iff the next revPut is the first change of a move. */
+    private boolean _moveStart;
     /** Stack of past black moves. */
     private Stack<String> _blackMove;
 }
@@ -0,0 +1,255 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/** Tests of Board.
+ *  @author Abel Yagubyan
+ */
+public class BoardTest {
+
+    /** Remove every piece from BOARD, which must be in its initial
+     *  position, leaving black to move. */
+    private static void empty(Board board) {
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            board.put(EMPTY, sq(k));
+        }
+    }
+
+    /** Return a board set up from scratch with the same pieces as BOARD,
+     *  which must have black to move, whose hash key is therefore
+     *  computed without any moves. */
+    private static Board rebuilt(Board board) {
+        Board result = new Board();
+        empty(result);
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            if (board.get(k) != EMPTY) {
+                result.put(board.get(k), sq(k));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff MOVES contains a move to TO. */
+    private static boolean movesTo(List<Move> moves, Square to) {
+        for (Move move : moves) {
+            if (move.to() == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testPutGet() {
+        Board board = new Board();
+        assertEquals("king", KING, board.get(sq("e5")));
+        assertEquals("attacker", BLACK, board.get(sq("a5")));
+        assertEquals("defender", WHITE, board.get(sq("e3")));
+        assertEquals("empty", EMPTY, board.get(sq("a1")));
+        empty(board);
+        Piece[] pieces = { BLACK, WHITE, EMPTY };
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            if (k != Board.THRONE.index()) {
+                board.put(pieces[k % 3], sq(k));
+            }
+        }
+        board.put(KING, sq("b7"));
+        Board copy = new Board(board);
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            Piece expected =
+                k == sq("b7").index() ? KING
+                : k == Board.THRONE.index() ? EMPTY : pieces[k % 3];
+            assertEquals(sq(k).toString(), expected, board.get(k));
+            assertEquals(sq(k).toString(), expected, copy.get(k));
+        }
+        assertEquals("king square", sq("b7"), board.kingPosition());
+        assertEquals("king square", sq("b7"), copy.kingPosition());
+    }
+
+    @Test
+    public void testHashKeys() {
+        Random random = new Random(42);
+        for (int game = 0; game < 20; game += 1) {
+            Board board = new Board();
+            List<Move> played = new ArrayList<>();
+            List<Long> keys = new ArrayList<>();
+            while (played.size() < 200) {
+                List<Move> moves = board.legalMoves(board.turn());
+                Move move = moves.get(random.nextInt(moves.size()));
+                if (!board.isLegal(move)) {
+                    continue;
+                }
+                long key = board.hashKey();
+                board.makeMove(move);
+                if (board.winner() != null) {
+                    break;
+                }
+                played.add(move);
+                keys.add(key);
+                if (board.turn() == BLACK) {
+                    assertEquals("incremental key", rebuilt(board).hashKey(),
+                                 board.hashKey());
+                }
+            }
+            board = new Board();
+            for (Move move : played) {
+                board.makeMove(move);
+            }
+            for (int k = keys.size() - 1; k >= 0; k -= 1) {
+                board.undo();
+                assertEquals("key after undo", (long) keys.get(k),
+                             board.hashKey());
+            }
+            assertEquals("back to start", new Board().hashKey(),
+                         board.hashKey());
+        }
+    }
+
+    @Test
+    public void testRepetition() {
+        Board board = new Board();
+        board.makeMove(sq("d1"), sq("c1"));
+        board.makeMove(sq("e3"), sq("d3"));
+        board.makeMove(sq("c1"), sq("d1"));
+        board.makeMove(sq("d3"), sq("e3"));
+        assertNull("no repetition yet", board.winner());
+        assertFalse("no repetition yet", board.repeatedPosition());
+        board.makeMove(sq("d1"), sq("c1"));
+        assertTrue("repeated", board.repeatedPosition());
+        assertNotNull("game over", board.winner());
+        board.undo();
+        assertFalse("repetition undone", board.repeatedPosition());
+        assertNull("repetition undone", board.winner());
+    }
+
+    @Test
+    public void testCaptureUndo() {
+        Board board = new Board();
+        empty(board);
+        board.put(KING, sq("e5"));
+        board.put(WHITE, sq("c3"));
+        board.put(BLACK, sq("c4"));
+        board.put(BLACK, sq("g2"));
+        long key = board.hashKey();
+        board.makeMove(sq("g2"), sq("c2"));
+        assertEquals("captured", EMPTY, board.get(sq("c3")));
+        board.undo();
+        assertEquals("restored", WHITE, board.get(sq("c3")));
+        assertEquals("moved back", BLACK, board.get(sq("g2")));
+        assertEquals("vacated", EMPTY, board.get(sq("c2")));
+        assertEquals("turn", BLACK, board.turn());
+        assertEquals("key", key, board.hashKey());
+    }
+
+    @Test
+    public void testThroneMoves() {
+        Board board = new Board();
+        empty(board);
+        board.put(KING, sq("c5"));
+        board.put(WHITE, sq("e3"));
+        board.put(BLACK, sq("e7"));
+        List<Move> moves = board.legalMoves(WHITE);
+        assertTrue("king may enter the throne",
+                   moves.contains(Move.mv(sq("c5"), sq("e5"))));
+        assertFalse("others may not",
+                    moves.contains(Move.mv(sq("e3"), sq("e5"))));
+        assertFalse("black may not either",
+                    movesTo(board.legalMoves(BLACK), Board.THRONE));
+        assertFalse(board.isLegal(sq("e7"), sq("e5")));
+        assertEquals("pieces", 2, board.pieceCount(WHITE));
+        assertEquals("pieces", 1, board.pieceCount(BLACK));
+    }
+
+    @Test
+    public void testUndoWinState() {
+        Random random = new Random(7);
+        for (int game = 0; game < 20; game += 1) {
+            Board board = new Board();
+            List<Piece> turns = new ArrayList<>();
+            while (board.winner() == null) {
+                List<Move> moves = board.legalMoves(board.turn());
+                turns.add(board.turn());
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            for (int k = turns.size() - 1; k >= 0; k -= 1) {
+                board.undo();
+                assertNull("winner after undo", board.winner());
+                assertEquals("turn after undo", turns.get(k), board.turn());
+            }
+            assertEquals("king restored", Board.THRONE,
+                         board.kingPosition());
+            assertEquals("pieces", 16, board.pieceCount(BLACK));
+            assertEquals("pieces", 9, board.pieceCount(WHITE));
+        }
+    }
+
+    @Test
+    public void testNoMoveLoses() {
+        Board board = new Board();
+        empty(board);
+        board.put(KING, sq("e5"));
+        board.put(WHITE, sq("a2"));
+        board.put(WHITE, sq("b4"));
+        board.put(WHITE, sq("d1"));
+        board.put(BLACK, sq("a1"));
+        board.put(BLACK, sq("c3"));
+        board.makeMove(sq("c3"), sq("c1"));
+        assertNull(board.winner());
+        board.makeMove(sq("b4"), sq("b1"));
+        assertEquals("captured", EMPTY, board.get(sq("c1")));
+        assertTrue("black is blocked", board.legalMoves(BLACK).isEmpty());
+        assertEquals("white wins", WHITE, board.winner());
+        board.undo();
+        assertNull(board.winner());
+        assertEquals(WHITE, board.turn());
+    }
+
+    @Test
+    public void testThroneCapture() {
+        Board board = new Board();
+        empty(board);
+        board.put(KING, sq("e5"));
+        board.put(BLACK, sq("d5"));
+        board.put(BLACK, sq("f5"));
+        board.put(BLACK, sq("h6"));
+        board.put(BLACK, sq("e2"));
+        board.makeMove(sq("h6"), sq("e6"));
+        assertEquals("three sides do not capture on the throne",
+                     sq("e5"), board.kingPosition());
+        assertNull(board.winner());
+        board.undo();
+        board.put(BLACK, sq("e6"));
+        board.makeMove(sq("e2"), sq("e4"));
+        assertNull("king captured on the throne", board.kingPosition());
+        assertEquals(BLACK, board.winner());
+    }
+
+    @Test
+    public void testSideThroneCapture() {
+        Board board = new Board();
+        empty(board);
+        board.put(KING, sq("e6"));
+        board.put(BLACK, sq("d6"));
+        board.put(BLACK, sq("h6"));
+        board.makeMove(sq("h6"), sq("f6"));
+        assertEquals("two sides do not capture beside the throne",
+                     sq("e6"), board.kingPosition());
+        assertNull(board.winner());
+        board.undo();
+        board.put(BLACK, sq("e7"));
+        board.makeMove(sq("h6"), sq("f6"));
+        assertNull("empty throne is the fourth side", board.kingPosition());
+        assertEquals(BLACK, board.winner());
+        board.undo();
+        assertEquals("undo restores the king", KING, board.get(sq("e6")));
+    }
+
+}
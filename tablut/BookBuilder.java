@@ -0,0 +1,146 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Builds an opening book (see OpeningBook) offline.  Starting from the
+ *  initial position, each position is analyzed to a fixed depth, and its
+ *  best few moves are recorded with their values; the positions after
+ *  those moves are analyzed in turn, to a given number of plies.  The
+ *  positions of each ply are analyzed in parallel, one per thread, each
+ *  thread with an AI of its own.
+ *  @author Abel Yagubyan
+ */
+public class BookBuilder {
+
+    /** Default number of plies covered by the book. */
+    private static final int DEFAULT_PLIES = 4;
+    /** Default number of moves recorded for each position. */
+    private static final int DEFAULT_BREADTH = 3;
+    /** Default search depth. */
+    private static final int DEFAULT_DEPTH = 5;
+
+    /** Build a book.  ARGS are the output file name, then optionally
+     *  the number of plies, the number of moves recorded for each
+     *  position, the search depth, and the number of threads, in that
+     *  order, defaulting to DEFAULT_PLIES, DEFAULT_BREADTH, DEFAULT_DEPTH
+     *  and the number of available processors. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java tablut.BookBuilder FILE"
+                               + " [PLIES [BREADTH [DEPTH [THREADS]]]]");
+            System.exit(1);
+        }
+        int plies = args.length > 1
+            ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int breadth = args.length > 2
+            ? Integer.parseInt(args[2]) : DEFAULT_BREADTH;
+        int depth = args.length > 3
+            ? Integer.parseInt(args[3]) : DEFAULT_DEPTH;
+        int threads = args.length > 4
+            ? Integer.parseInt(args[4])
+            : Runtime.getRuntime().availableProcessors();
+        SearchConfig config = new SearchConfig();
+        config.depthLimit = depth;
+        config.moveTime = Long.MAX_VALUE / 4;
+        ThreadLocal<AI> analysts =
+            ThreadLocal.withInitial(() -> new AI(config));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        List<long[]> records = new ArrayList<>();
+        List<Board> level = new ArrayList<>();
+        level.add(new Board());
+        Set<Long> seen = new HashSet<>();
+        seen.add(level.get(0).hashKey());
+        for (int ply = 0; ply < plies && !level.isEmpty(); ply += 1) {
+            long start = System.currentTimeMillis();
+            List<Future<List<Variation>>> analyses = new ArrayList<>();
+            for (Board board : level) {
+                Callable<List<Variation>> task =
+                    () -> analysts.get().analyze(board, breadth);
+                analyses.add(pool.submit(task));
+            }
+            List<Board> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 1) {
+                Board board = level.get(i);
+                for (Variation variation : result(analyses.get(i))) {
+                    records.add(new long[] {
+                        board.hashKey(), variation.move().packed(),
+                        variation.value()
+                    });
+                    Board child = new Board(board);
+                    child.makeMove(variation.move());
+                    if (child.winner() == null
+                        && seen.add(child.hashKey())) {
+                        next.add(child);
+                    }
+                }
+            }
+            System.out.printf("ply %d: %d positions, %d ms%n", ply,
+                              level.size(),
+                              System.currentTimeMillis() - start);
+            level = next;
+        }
+        pool.shutdown();
+
+        sort(records);
+        try {
+            write(args[0], records);
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s: %s%n", args[0],
+                              excp.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("%d records written to %s%n", records.size(),
+                          args[0]);
+        System.exit(0);
+    }
+
+    /** Return the result of FUTURE, waiting for it if need be. */
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Sort RECORDS, each a hash key, packed move and value, into the
+     *  order of an OpeningBook: by key, and by decreasing value for the
+     *  same key. */
+    static void sort(List<long[]> records) {
+        records.sort((r0, r1) -> r0[0] != r1[0] ? Long.compare(r0[0], r1[0])
+                     : Long.compare(r1[2], r0[2]));
+    }
+
+    /** Write RECORDS, each a hash key, packed move and value, in order,
+     *  to the book file named FILENAME.  Values are clamped to the range
+     *  of a short. */
+    static void write(String fileName, List<long[]> records)
+        throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(fileName)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(records.size());
+            for (long[] record : records) {
+                out.writeLong(record[0]);
+                out.writeShort((int) record[1]);
+                out.writeShort((int) Math.max(-Short.MAX_VALUE,
+                                              Math.min(Short.MAX_VALUE,
+                                                       record[2])));
+            }
+        }
+    }
+}
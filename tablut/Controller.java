@@ -1,8 +1,20 @@
 package tablut;
 
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
@@ -11,7 +23,10 @@ import static tablut.Utils.*;
 import static tablut.Square.*;
 import static tablut.Piece.*;
 
-/** The input/output and GUI controller for play of Tablut.
+/** The input/output and GUI controller for play of Tablut.  Input is read
+ *  on a separate thread into a queue, and automated players work out
+ *  their moves on another thread, so that commands entered meanwhile can
+ *  cut their thinking short.
  *  @author Abel Yagubyan */
 final class Controller {
 
@@ -45,14 +60,20 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        if (_reader == null) {
+            _reader = new Thread(this::readInput, "input");
+            _reader.setDaemon(true);
+            _reader.start();
+        }
         while (_playing) {
             _view.update(this);
             String command;
             if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
+                Player player = _board.turn() == WHITE ? _white : _black;
+                if (player.isManual()) {
+                    command = player.myMove();
                 } else {
-                    command = _black.myMove();
+                    command = automatedMove(player);
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -74,6 +95,12 @@ final class Controller {
         }
     }
 
+    /** Make TEMPLATE the exemplar for automated players chosen by the
+     *  command "auto <color> NAME". */
+    void addAutoPlayerTemplate(String name, Player template) {
+        _namedAutoPlayerTemplates.put(name, template);
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified. */
     Board board() {
@@ -103,11 +130,94 @@ final class Controller {
             System.out.print("> ");
             System.out.flush();
         }
-        if (_input.hasNextLine()) {
-            return _input.nextLine().trim();
-        } else {
+        if (_inputEnded) {
             return null;
         }
+        try {
+            String line = _pendingInput.take();
+            if (line == END_OF_INPUT) {
+                _inputEnded = true;
+                return null;
+            }
+            return line;
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        }
+    }
+
+    /** Copy lines of input, trimmed, to _pendingInput until the input
+     *  ends, and then add END_OF_INPUT.  Runs on _reader. */
+    private void readInput() {
+        while (_input.hasNextLine()) {
+            _pendingInput.add(_input.nextLine().trim());
+        }
+        _pendingInput.add(END_OF_INPUT);
+    }
+
+    /** Return the move of the automated PLAYER, which works it out on
+     *  another thread (see think), and report it.  If PLAYER is
+     *  interrupted, its move is discarded, and the first pending line
+     *  returned instead, so that the input before the interrupting
+     *  command is still executed in order. */
+    private String automatedMove(Player player) {
+        AtomicBoolean moveNow = new AtomicBoolean();
+        String move = think(() -> player.myMove(moveNow), moveNow);
+        if (move == null) {
+            return _pendingInput.poll();
+        }
+        reportMove(Move.mv(move));
+        return move;
+    }
+
+    /** Return the result of TASK, which is run on another thread and
+     *  finishes as soon as it can once MOVENOW is set, or null if it is
+     *  interrupted.  Meanwhile, scans all pending input every
+     *  POLL_INTERVAL milliseconds.  A "stop" or "movenow" command,
+     *  wherever it is, is executed at once, setting MOVENOW.  A command
+     *  that would change the position or the players (see INTERRUPTS)
+     *  sets MOVENOW and interrupts TASK, leaving all pending input in
+     *  place.  Other input waits until TASK finishes.  An
+     *  IllegalArgumentException thrown by TASK is rethrown. */
+    private <T> T think(Callable<T> task, AtomicBoolean moveNow) {
+        if (_thinker == null) {
+            _thinker = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "thinker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        _moveNow = moveNow;
+        Future<T> thinking = _thinker.submit(task);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                T result = thinking.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                return interrupted ? null : result;
+            } catch (TimeoutException excp) {
+                Iterator<String> pending = _pendingInput.iterator();
+                while (!interrupted && pending.hasNext()) {
+                    String line = pending.next();
+                    if (line == END_OF_INPUT) {
+                        break;
+                    }
+                    String cmnd = normalize(line);
+                    if (MOVE_NOW.reset(cmnd).matches()) {
+                        pending.remove();
+                        executeCommand(line);
+                    } else if (INTERRUPTS.reset(cmnd).matches()) {
+                        moveNow.set(true);
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof IllegalArgumentException) {
+                    throw (IllegalArgumentException) excp.getCause();
+                }
+                throw new IllegalStateException(excp);
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
     }
 
     /** Return true iff white is a manual player. */
@@ -171,8 +281,10 @@ final class Controller {
         new Command("dump$", this::doDump),
         new Command("undo$", this::doUndo),
         new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
+        new Command("auto\\s+(white|black)(?:\\s+(\\w+))?$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("(stop|movenow)$", this::doMoveNow),
+        new Command("analyze\\s+(\\d+)$", this::doAnalyze),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
@@ -180,6 +292,32 @@ final class Controller {
     /** A Matcher whose Pattern matches comments. */
     private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
 
+    /** A Matcher whose Pattern matches the commands that make an
+     *  automated player move at once. */
+    private static final Matcher MOVE_NOW =
+        Pattern.compile("(stop|movenow)$").matcher("");
+
+    /** A Matcher whose Pattern matches the commands that abandon the move
+     *  an automated player is working out. */
+    private static final Matcher INTERRUPTS =
+        Pattern.compile("(quit|new|undo|manual|auto|toggle)\\b.*")
+        .matcher("");
+
+    /** Interval, in milliseconds, between checks for input while an
+     *  automated player is thinking. */
+    private static final long POLL_INTERVAL = 20;
+
+    /** Marks the end of input in _pendingInput.  It is compared by
+     *  identity, and so can never be confused with a line of input. */
+    private static final String END_OF_INPUT = new String("");
+
+    /** Return CMND without comments or surrounding whitespace, in lower
+     *  case. */
+    private static String normalize(String cmnd) {
+        COMMENT.reset(cmnd);
+        return COMMENT.replaceFirst("").trim().toLowerCase();
+    }
+
     /** Check that CMND is one of the valid Tablut commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
     private void executeCommand(String cmnd) {
@@ -188,8 +326,7 @@ final class Controller {
             _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        cmnd = normalize(cmnd);
 
         if (cmnd.isEmpty()) {
             return;
@@ -204,19 +341,29 @@ final class Controller {
         throw error("Bad command: %s", cmnd);
     }
 
+    /** Stop the background thinking of both players. */
+    private void stopPondering() {
+        _white.stopPondering();
+        _black.stopPondering();
+    }
+
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPondering();
         _board.init();
         _winner = null;
     }
 
     /** Command "manual <color>", where <color> is COLOR.group(1). */
     private void doManual(Matcher color) {
+        stopPondering();
         switch (color.group(1)) {
         case "black":
+            _black.close();
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.close();
             _white = _manualPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -225,14 +372,27 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
+    /** Command "auto <color> [<name>]", where <color> is COLOR.group(1)
+     *  and the optional <name>, COLOR.group(2), selects one of the
+     *  templates given to addAutoPlayerTemplate instead of the default
+     *  one. */
     private void doAuto(Matcher color) {
+        stopPondering();
+        Player template = _autoPlayerTemplate;
+        if (color.group(2) != null) {
+            template = _namedAutoPlayerTemplates.get(color.group(2));
+            if (template == null) {
+                throw error("unknown player: %s", color.group(2));
+            }
+        }
         switch (color.group(1)) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black.close();
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white.close();
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -244,6 +404,7 @@ final class Controller {
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
     private void doToggle(Matcher mat) {
+        stopPondering();
         Square sq = sq(mat.group(1));
         Piece piece;
         switch (_board.get(sq)) {
@@ -257,8 +418,20 @@ final class Controller {
         _board.clearUndo();
     }
 
+    /** Command "stop" or "movenow": the automated player now thinking, if
+     *  any, moves at once with the best move it has found, or finishes
+     *  its analysis with the best moves it has found. */
+    private void doMoveNow(Matcher unused) {
+        _moveNow.set(true);
+    }
+
     /** Command "quit". */
     private void doQuit(Matcher unused) {
+        _white.close();
+        _black.close();
+        if (_analyst != null) {
+            _analyst.close();
+        }
         _playing = false;
     }
 
@@ -280,12 +453,60 @@ final class Controller {
         }
     }
 
+    /** Command "analyze N", where N is the first group of MAT: report the
+     *  N best moves for the side to move, with their values (for that
+     *  side) and principal variations.  The analysis is done by the
+     *  player to move, if automated and able to analyze, and otherwise
+     *  by one made from the automated player template, or from the
+     *  "alphabeta" template if that player cannot analyze.  It runs on
+     *  another thread (see think).  A
+     *  "stop" or "movenow" command ends it early with the best moves
+     *  found so far; a command that interrupts it discards them. */
+    private void doAnalyze(Matcher mat) {
+        int count;
+        try {
+            count = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (count < 1) {
+            throw error("must analyze at least one move");
+        } else if (_winner != null) {
+            throw error("game is over");
+        }
+        Player player = _board.turn() == WHITE ? _white : _black;
+        if (player.isManual() || !player.canAnalyze()) {
+            if (_analyst == null) {
+                Player template = _autoPlayerTemplate;
+                if (!template.canAnalyze()) {
+                    template = _namedAutoPlayerTemplates.get("alphabeta");
+                }
+                if (template == null || !template.canAnalyze()) {
+                    throw error("no player can analyze positions");
+                }
+                _analyst = template.create(_board.turn(), this);
+            }
+            player = _analyst;
+        }
+        Player analyst = player;
+        AtomicBoolean moveNow = new AtomicBoolean();
+        List<Variation> variations =
+            think(() -> analyst.analyze(count, moveNow), moveNow);
+        if (variations == null) {
+            return;
+        }
+        for (int k = 0; k < variations.size(); k += 1) {
+            _reporter.reportNote("%d. %s", k + 1, variations.get(k));
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
+                stopPondering();
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
@@ -301,6 +522,7 @@ final class Controller {
      *  nothing). */
     private void doUndo(Matcher unused) {
         if (_board.moveCount() > 1) {
+            stopPondering();
             _board.undo();
             _board.undo();
             _winner = null;
@@ -329,6 +551,24 @@ final class Controller {
     /** Input source. */
     private Scanner _input;
 
+    /** Lines of input read by _reader and not yet used. */
+    private final LinkedBlockingQueue<String> _pendingInput =
+        new LinkedBlockingQueue<>();
+
+    /** Thread that copies input to _pendingInput, or null until play
+     *  starts it. */
+    private Thread _reader;
+
+    /** True once readLine has returned the end of input. */
+    private boolean _inputEnded;
+
+    /** Runs automated players' myMove and analyze methods, or null
+     *  until needed. */
+    private ExecutorService _thinker;
+
+    /** Set to make the automated player now thinking move at once. */
+    private AtomicBoolean _moveNow = new AtomicBoolean();
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
@@ -340,6 +580,14 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** The automated player that analyzes positions for manual players,
+     *  or null until needed. */
+    private Player _analyst;
+
+    /** Templates for automated players selected by name. */
+    private HashMap<String, Player> _namedAutoPlayerTemplates =
+        new HashMap<>();
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
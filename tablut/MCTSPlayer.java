@@ -0,0 +1,383 @@
+package tablut;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tablut.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo Tree Search.  Each
+ *  iteration descends the tree from the current position, choosing at
+ *  each node the child with the best UCT (upper confidence bound)
+ *  value, then finishes the game from the leaf it reaches by a random
+ *  playout, and credits the result to every node on its path.  A leaf
+ *  becomes a node of the tree once it has been visited EXPANSION_VISITS
+ *  times.  The move played is the one whose subtree was visited most.
+ *
+ *  The tree is kept in parallel arrays indexed by node number rather
+ *  than in node objects; the children of a node occupy consecutive
+ *  entries.  With _config.threads greater than 1, that many workers
+ *  search the same tree at once (tree parallelism).  A worker counts
+ *  its visit to each node on its way down, before the playout result
+ *  is known, so that until the result arrives the visit counts as a
+ *  loss (a "virtual loss") and steers the other workers elsewhere.
+ *  @author Abel Yagubyan
+ */
+class MCTSPlayer extends Player {
+
+    /** Number of visits after which a leaf is expanded. */
+    static final int EXPANSION_VISITS = 4;
+
+    /** Greatest number of moves in a playout, after which the game is
+     *  scored as a draw. */
+    static final int PLAYOUT_PLIES = 100;
+
+    /** Weight of the exploration term of the UCT value. */
+    static final double EXPLORATION = 0.7;
+
+    /** Greatest depth of a path in the tree. */
+    private static final int MAX_PATH = 256;
+
+    /** Approximate size in bytes of one node of the tree. */
+    private static final int NODE_BYTES = 24;
+
+    /** Expansion states of a node: LEAF has no children yet; EXPANDING
+     *  is having its children added by some worker; EXPANDED has them;
+     *  and FULL could not be given them for lack of room. */
+    private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2,
+        FULL = 3;
+
+    /** The root of the tree. */
+    private static final int ROOT = 0;
+
+    /** A new MCTSPlayer with no piece or controller (intended to produce
+     *  a template) using the settings in CONFIG. */
+    MCTSPlayer(SearchConfig config) {
+        this(null, null, config);
+    }
+
+    /** A new MCTSPlayer playing PIECE under control of CONTROLLER, using
+     *  the settings in CONFIG. */
+    MCTSPlayer(Piece piece, Controller controller, SearchConfig config) {
+        super(piece, controller);
+        _config = config;
+        _time = new TimeControl(config.moveTime, config.clock);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller, _config);
+    }
+
+    @Override
+    String myMove() {
+        return myMove(new AtomicBoolean());
+    }
+
+    @Override
+    String myMove(AtomicBoolean moveNow) {
+        _moveNow = moveNow;
+        Move mv = findMove(board());
+        _moveNow = new AtomicBoolean();
+        return mv.toString();
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    void close() {
+        if (_workerPool != null) {
+            _workerPool.shutdown();
+            _workerPool = null;
+        }
+        _workers = null;
+    }
+
+    /** Return a move for the side to move in POSITION, assuming there is
+     *  a move, after searching until the time budget for this move runs
+     *  out, _config.playouts playouts (if positive) have been made, or
+     *  I am told to move now.
+     *  The random playouts are seeded from my controller's randInt, so
+     *  that a single-threaded search limited by playouts is repeatable
+     *  after Controller.setSeed. */
+    Move findMove(Board position) {
+        long start = System.currentTimeMillis();
+        if (_workers == null) {
+            createTree();
+        }
+        _deadline = start + _time.budget(position, position.turn());
+        _playouts.set(0);
+        _size.set(ROOT + 1);
+        _state.set(ROOT, LEAF);
+        _visits.set(ROOT, 0);
+        _wins.set(ROOT, 0);
+        for (Worker worker : _workers) {
+            worker.start(position);
+        }
+        _workers[0].expand(ROOT);
+        if (_count[ROOT] > 1) {
+            Future<?>[] working = new Future<?>[_workers.length - 1];
+            for (int k = 1; k < _workers.length; k += 1) {
+                working[k - 1] = _workerPool.submit(_workers[k]);
+            }
+            _workers[0].run();
+            for (Future<?> future : working) {
+                try {
+                    future.get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            }
+        }
+        int best = _first[ROOT];
+        for (int c = best + 1; c < _first[ROOT] + _count[ROOT]; c += 1) {
+            if (_visits.get(c) > _visits.get(best)) {
+                best = c;
+            }
+        }
+        _time.used(System.currentTimeMillis() - start);
+        if (_controller != null) {
+            _controller.logComment("playouts %d nodes %d value %.3f",
+                                   _playouts.get(), _size.get(),
+                                   _wins.get(best)
+                                   / (2.0 * Math.max(1, _visits.get(best))));
+        }
+        return Move.mv(_move[best]);
+    }
+
+    /** Return the number of playouts made by my last search. */
+    long playouts() {
+        return _playouts.get();
+    }
+
+    /** Create the node arrays, sized to use about _config.hashMegabytes
+     *  megabytes, and my workers, with threads for all but the first. */
+    private void createTree() {
+        int nodes = (int) Math.min(Integer.MAX_VALUE - 8,
+                                   ((long) _config.hashMegabytes << 20)
+                                   / NODE_BYTES);
+        nodes = Math.max(nodes, Board.MAX_MOVES + 1);
+        _move = new int[nodes];
+        _first = new int[nodes];
+        _count = new int[nodes];
+        _state = new AtomicIntegerArray(nodes);
+        _visits = new AtomicIntegerArray(nodes);
+        _wins = new AtomicIntegerArray(nodes);
+        _workers = new Worker[_config.threads];
+        for (int k = 0; k < _workers.length; k += 1) {
+            _workers[k] = new Worker();
+        }
+        if (_workers.length > 1) {
+            _workerPool =
+                Executors.newFixedThreadPool(_workers.length - 1, r -> {
+                    Thread thread = new Thread(r, "mcts worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+    }
+
+    /** Return true iff the current search should stop. */
+    private boolean done() {
+        return _moveNow.get()
+            || _config.playouts > 0 && _playouts.get() >= _config.playouts
+            || System.currentTimeMillis() > _deadline;
+    }
+
+    /** One searcher of the tree, with its own board and random numbers.
+     *  After start, a Worker allocates nothing. */
+    private class Worker implements Runnable {
+
+        /** Prepare to search POSITION, seeding my random numbers from my
+         *  controller (or arbitrarily if I have none). */
+        void start(Board position) {
+            _board.copy(position);
+            _root = position.turn();
+            if (_controller == null) {
+                _random = System.nanoTime();
+            } else {
+                _random = (long) _controller.randInt(1 << 30) << 32
+                    | _controller.randInt(1 << 30);
+            }
+            _random |= 1;
+        }
+
+        @Override
+        public void run() {
+            while (!done()) {
+                iterate();
+                _playouts.incrementAndGet();
+            }
+        }
+
+        /** Make one descent through the tree and one playout from the leaf
+         *  reached, and record the result, leaving my board as it was. */
+        private void iterate() {
+            int node = ROOT;
+            int length = 0;
+            int made = 0;
+            _path[length] = node;
+            length += 1;
+            _visits.incrementAndGet(node);
+            while (_board.winner() == null && length < MAX_PATH) {
+                int state = _state.get(node);
+                if (state == LEAF && _visits.get(node) >= EXPANSION_VISITS
+                    && _state.compareAndSet(node, LEAF, EXPANDING)) {
+                    expand(node);
+                } else if (state != EXPANDED) {
+                    break;
+                }
+                if (_state.get(node) != EXPANDED) {
+                    break;
+                }
+                node = select(node);
+                _board.makeMove(_move[node]);
+                made += 1;
+                _path[length] = node;
+                length += 1;
+                _visits.incrementAndGet(node);
+            }
+            Piece winner = _board.winner();
+            if (winner == null) {
+                for (int ply = 0; ply < PLAYOUT_PLIES; ply += 1) {
+                    Piece turn = _board.turn();
+                    if (turn == WHITE && _board.kingEscapes() > 0) {
+                        winner = WHITE;
+                        break;
+                    }
+                    int n = _board.generateMoves(turn, _moves, 0);
+                    _board.makeMove(_moves[nextInt(n)]);
+                    made += 1;
+                    winner = _board.winner();
+                    if (winner != null) {
+                        break;
+                    }
+                }
+            }
+            Piece mover = _root.opponent();
+            for (int k = 0; k < length; k += 1) {
+                if (winner == null) {
+                    _wins.addAndGet(_path[k], 1);
+                } else if (winner == mover) {
+                    _wins.addAndGet(_path[k], 2);
+                }
+                mover = mover.opponent();
+            }
+            for (; made > 0; made -= 1) {
+                _board.undo();
+            }
+        }
+
+        /** Give NODE, whose position is that of my board, its children,
+         *  one for each legal move, or mark it FULL if there is no room
+         *  for them. */
+        void expand(int node) {
+            int n = _board.generateMoves(_board.turn(), _moves, 0);
+            if (_size.get() + n > _move.length) {
+                _state.set(node, FULL);
+                return;
+            }
+            int first = _size.getAndAdd(n);
+            if (first + n > _move.length) {
+                _state.set(node, FULL);
+                return;
+            }
+            for (int i = 0; i < n; i += 1) {
+                int child = first + i;
+                _move[child] = _moves[i];
+                _state.set(child, LEAF);
+                _visits.set(child, 0);
+                _wins.set(child, 0);
+            }
+            _first[node] = first;
+            _count[node] = n;
+            _state.set(node, EXPANDED);
+        }
+
+        /** Return the child of NODE with the greatest UCT value, taking
+         *  unvisited children first. */
+        private int select(int node) {
+            double logVisits = Math.log(Math.max(1, _visits.get(node)));
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = _first[node], end = c + _count[node]; c < end;
+                 c += 1) {
+                int visits = _visits.get(c);
+                if (visits == 0) {
+                    return c;
+                }
+                double value = _wins.get(c) / (2.0 * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /** Return a pseudo-random integer in the range 0 inclusive to N,
+         *  exclusive, from my xorshift generator. */
+        private int nextInt(int n) {
+            _random ^= _random << 13;
+            _random ^= _random >>> 7;
+            _random ^= _random << 17;
+            return (int) ((_random >>> 1) % n);
+        }
+
+        /** My copy of the position searched, which follows my descent
+         *  and playout. */
+        private final Board _board = new Board();
+        /** The side to move at the root. */
+        private Piece _root;
+        /** Buffer for generated moves. */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+        /** The nodes of my current descent, from the root. */
+        private final int[] _path = new int[MAX_PATH];
+        /** State of my random number generator (never 0). */
+        private long _random;
+    }
+
+    /** Settings for my search. */
+    private final SearchConfig _config;
+    /** Decides how long I think about each move. */
+    private final TimeControl _time;
+    /** My searchers (created on first use, so that templates do not
+     *  allocate a tree). */
+    private Worker[] _workers;
+    /** Threads that run all but the first of _workers, or null if there
+     *  are none. */
+    private ExecutorService _workerPool;
+    /** Time (as from System.currentTimeMillis) at which the current
+     *  search must stop. */
+    private long _deadline;
+    /** Set when my current move must be made as soon as possible (see
+     *  Player.myMove(AtomicBoolean)). */
+    private volatile AtomicBoolean _moveNow = new AtomicBoolean();
+    /** Number of playouts made in the current search. */
+    private final AtomicLong _playouts = new AtomicLong();
+    /** Number of nodes in use. */
+    private final AtomicInteger _size = new AtomicInteger();
+    /** For each node, the packed move leading to it from its parent. */
+    private int[] _move;
+    /** For each expanded node, its first child and number of
+     *  children. */
+    private int[] _first, _count;
+    /** For each node, its expansion state (LEAF, EXPANDING, EXPANDED, or
+     *  FULL).  Setting EXPANDED publishes the node's children. */
+    private AtomicIntegerArray _state;
+    /** For each node, the number of descents through it, including those
+     *  whose playouts have not finished. */
+    private AtomicIntegerArray _visits;
+    /** For each node, twice the number of playouts through it won by the
+     *  side that moved into it, plus the number drawn. */
+    private AtomicIntegerArray _wins;
+}
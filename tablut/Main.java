@@ -20,11 +20,21 @@ public class Main {
         String[] inputfile;
         inputfile = args;
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1} "
+                            + "--time={0,1} --clock={0,1} --hash={0,1} "
+                            + "--threads={0,1} --engine={0,1} --search={0,1} "
+                            + "--ponder --book={0,1} --tablebases={0,1} "
+                            + "--={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--time=MSEC]"
+                               + " [--clock=MSEC] [--hash=MB]"
+                               + " [--threads=N] [--engine=smp|ybw|mcts]"
+                               + " [--ponder] [--book=FILE]"
+                               + " [--tablebases=DIR]"
+                               + " [--search=KEY=VALUE,...]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
@@ -97,7 +107,79 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        SearchConfig config = getSearchConfig(options);
+        Player autoPlayer = config.engine.equals("mcts")
+            ? new MCTSPlayer(config) : new AI(config);
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer, autoPlayer,
+                           options.contains("--strict"));
+        control.addAutoPlayerTemplate("alphabeta", new AI(config));
+        control.addAutoPlayerTemplate("mcts", new MCTSPlayer(config));
+        return control;
+    }
+
+    /** Return the search settings given by OPTIONS: --time=MSEC is the
+     *  time allowed per move, --clock=MSEC the total time allowed
+     *  each side for a game, --hash=MB the size of the transposition
+     *  table, --threads=N the number of threads searching,
+     *  --engine=NAME the search method, --ponder has the AI search
+     *  while its opponent thinks, --book=FILE gives an opening book
+     *  written by BookBuilder, --tablebases=DIR gives a directory of
+     *  endgame tablebases written by TablebaseGenerator, and
+     *  --search=KEY=VALUE,... adjusts the other search settings (see
+     *  SearchConfig.set). */
+    private static SearchConfig getSearchConfig(CommandArgs options) {
+        SearchConfig config = new SearchConfig();
+        try {
+            if (options.contains("--time")) {
+                config.moveTime = Long.parseLong(options.getFirst("--time"));
+            }
+            if (options.contains("--clock")) {
+                config.clock = Long.parseLong(options.getFirst("--clock"));
+            }
+            if (options.contains("--hash")) {
+                config.hashMegabytes =
+                    Integer.parseInt(options.getFirst("--hash"));
+            }
+            if (options.contains("--threads")) {
+                config.threads =
+                    Integer.parseInt(options.getFirst("--threads"));
+                if (config.threads < 1) {
+                    throw error("thread count must be positive");
+                }
+            }
+            if (options.contains("--engine")) {
+                config.engine = options.getFirst("--engine");
+                if (!config.engine.equals("smp")
+                    && !config.engine.equals("ybw")
+                    && !config.engine.equals("mcts")) {
+                    throw error("unknown engine: %s", config.engine);
+                }
+            }
+            config.ponder = options.contains("--ponder");
+            if (options.contains("--book")) {
+                try {
+                    config.book = new OpeningBook(options.getFirst("--book"));
+                } catch (IOException excp) {
+                    throw error("could not read opening book: %s",
+                                excp.getMessage());
+                }
+            }
+            if (options.contains("--tablebases")) {
+                try {
+                    config.tablebases =
+                        new Tablebase(options.getFirst("--tablebases"));
+                } catch (IOException excp) {
+                    throw error("could not read tablebases: %s",
+                                excp.getMessage());
+                }
+            }
+            if (options.contains("--search")) {
+                config.set(options.getFirst("--search"));
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad numeric option: %s", excp.getMessage());
+        }
+        return config;
     }
 }
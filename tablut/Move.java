@@ -65,6 +65,45 @@ final class Move {
         return null;
     }
 
+    /** Return the packed (int) form of the move from the square with index
+     *  FROM to the square with index TO, flagged with CAPTURE iff
+     *  CAPTURES.  Packed moves carry no Move object and are meant for
+     *  move lists in the search; mv(int) converts back. */
+    static int pack(int from, int to, boolean captures) {
+        return from | to << TO_SHIFT | (captures ? CAPTURE : 0);
+    }
+
+    /** Return the packed form of the move from the square with index FROM
+     *  to the square with index TO, with no flags. */
+    static int pack(int from, int to) {
+        return from | to << TO_SHIFT;
+    }
+
+    /** Return the index of the square moved from in packed move MOVE. */
+    static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /** Return the index of the square moved to in packed move MOVE. */
+    static int to(int move) {
+        return (move >> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /** Return true iff packed move MOVE is flagged as a capture. */
+    static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    /** Return the unique Move denoted by packed move MOVE. */
+    static Move mv(int move) {
+        return MOVES[from(move)][to(move)];
+    }
+
+    /** Return my packed form, without flags. */
+    int packed() {
+        return pack(_from.index(), _to.index());
+    }
+
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
         _moveMatcher.reset(str);
@@ -109,6 +148,14 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
+    /** Layout of a packed move: the index of the from square in the bits
+     *  of SQUARE_MASK, the index of the to square in the same number of
+     *  bits above TO_SHIFT, and the CAPTURE flag above those. */
+    static final int
+        SQUARE_MASK = 0x7f,
+        TO_SHIFT = 7,
+        CAPTURE = 1 << 14;
+
     /** The cache of all Moves created. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
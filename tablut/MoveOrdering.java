@@ -0,0 +1,105 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+
+/** Heuristics that rank quiet (non-capturing) moves for the search:
+ *  killer moves (quiet moves that recently caused a cutoff at the same
+ *  ply), a history table of how often each from-to move has caused
+ *  cutoffs, and a countermove table giving the move that last refuted
+ *  each previous move.  The history and countermove tables are indexed
+ *  by from * NUM_SQUARES + to, the layout of Move's table of moves.
+ *  @author Abel Yagubyan
+ */
+class MoveOrdering {
+
+    /** Number of killer moves kept per ply. */
+    static final int KILLERS = 2;
+
+    /** Ordering bonuses for the first and second killers and for the
+     *  countermove.  They exceed any history score. */
+    private static final int
+        KILLER_BONUS = 1 << 30,
+        COUNTER_BONUS = KILLER_BONUS - 2;
+
+    /** History scores are halved when any reaches this value. */
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    /** Heuristics for searches of up to MAXPLY plies. */
+    MoveOrdering(int maxPly) {
+        _killers = new int[maxPly + 1][KILLERS];
+        clear();
+    }
+
+    /** Forget everything. */
+    void clear() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, StagedMoves.NO_MOVE);
+        }
+        Arrays.fill(_history, 0);
+        Arrays.fill(_counters, StagedMoves.NO_MOVE);
+    }
+
+    /** Prepare for a new search: keep the history, with reduced weight,
+     *  and drop the killers, which belong to the old position. */
+    void newSearch() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, StagedMoves.NO_MOVE);
+        }
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] /= 8;
+        }
+    }
+
+    /** Return the ordering score of quiet packed move MOVE at PLY, played
+     *  in reply to packed move PREV (or StagedMoves.NO_MOVE).  Higher
+     *  scores are tried first. */
+    int score(int move, int ply, int prev) {
+        move &= ~Move.CAPTURE;
+        int[] killers = _killers[ply];
+        if (move == killers[0]) {
+            return KILLER_BONUS;
+        } else if (move == killers[1]) {
+            return KILLER_BONUS - 1;
+        } else if (prev != StagedMoves.NO_MOVE
+                   && _counters[index(prev)] == move) {
+            return COUNTER_BONUS;
+        }
+        return _history[index(move)];
+    }
+
+    /** Record that quiet packed move MOVE, played at PLY in reply to PREV
+     *  (or StagedMoves.NO_MOVE) with DEPTH plies left, caused a cutoff. */
+    void cutoff(int move, int ply, int prev, int depth) {
+        move &= ~Move.CAPTURE;
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        if (prev != StagedMoves.NO_MOVE) {
+            _counters[index(prev)] = move;
+        }
+        int i = index(move);
+        _history[i] += depth * depth;
+        if (_history[i] >= HISTORY_LIMIT) {
+            for (int k = 0; k < _history.length; k += 1) {
+                _history[k] /= 2;
+            }
+        }
+    }
+
+    /** Return the index of packed move MOVE in the history and
+     *  countermove tables. */
+    private static int index(int move) {
+        return Move.from(move) * NUM_SQUARES + Move.to(move);
+    }
+
+    /** _killers[p] holds the killer moves at ply p, most recent first. */
+    private final int[][] _killers;
+    /** History scores, by from-to index. */
+    private final int[] _history = new int[NUM_SQUARES * NUM_SQUARES];
+    /** Refutations of each move, by from-to index. */
+    private final int[] _counters = new int[NUM_SQUARES * NUM_SQUARES];
+}
@@ -0,0 +1,76 @@
+package tablut;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/** A read-only opening book: a file, written by BookBuilder, of
+ *  recommended moves and their values keyed by position, consulted
+ *  through a memory-mapped buffer.  After a header of HEADER_SIZE bytes
+ *  (the int MAGIC and the int number of records), the file is a sequence
+ *  of records of RECORD_SIZE bytes, each the long hash key (see
+ *  Board.hashKey) of a position, the short packed move (see Move.pack),
+ *  and the short value of that move for the side to move.  Records are
+ *  sorted by key, and those with the same key by decreasing value, so
+ *  that a binary search finds the best move for a position.
+ *  @author Abel Yagubyan
+ */
+class OpeningBook {
+
+    /** The first int of a book file. */
+    static final int MAGIC = 0x54424B31;
+
+    /** Size in bytes of the header, and of one record. */
+    static final int HEADER_SIZE = 8, RECORD_SIZE = 12;
+
+    /** The book in the file named FILENAME. */
+    OpeningBook(String fileName) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                  channel.size());
+        }
+        if (_buffer.capacity() < HEADER_SIZE || _buffer.getInt(0) != MAGIC) {
+            throw new IOException("not an opening book: " + fileName);
+        }
+        _size = _buffer.getInt(4);
+        if ((long) _size * RECORD_SIZE + HEADER_SIZE > _buffer.capacity()) {
+            throw new IOException("truncated opening book: " + fileName);
+        }
+    }
+
+    /** Return the number of records in the book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the best packed move recorded for the position whose hash
+     *  key is KEY, or StagedMoves.NO_MOVE if there is none. */
+    int probe(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == _size || key(lo) != key) {
+            return StagedMoves.NO_MOVE;
+        }
+        return _buffer.getShort(HEADER_SIZE + lo * RECORD_SIZE + 8);
+    }
+
+    /** Return the key of record K. */
+    private long key(int k) {
+        return _buffer.getLong(HEADER_SIZE + k * RECORD_SIZE);
+    }
+
+    /** The contents of the book file. */
+    private final MappedByteBuffer _buffer;
+    /** The number of records. */
+    private final int _size;
+}
@@ -0,0 +1,120 @@
+package tablut;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of OpeningBook and of the book files written by BookBuilder.
+ *  @author Abel Yagubyan
+ */
+public class OpeningBookTest {
+
+    /** Keys of the positions in the test book, including negative ones,
+     *  since keys are compared as signed longs. */
+    private static final long[] KEYS = {
+        Long.MIN_VALUE, -0x1234567890L, -1, 0, 42, 0x7edcba9876543210L
+    };
+
+    /** Packed moves recorded for each position, best first. */
+    private static final int[] MOVES = {
+        Move.pack(40, 44) | Move.CAPTURE, Move.pack(80, 8), Move.pack(0, 1)
+    };
+
+    /** Values of MOVES, decreasing, including some outside the range of
+     *  a short. */
+    private static final long[] VALUES = { 100000, 17, -100000 };
+
+    /** Return a new temporary file, deleted on exit. */
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("book", ".dat");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Return the records of the test book, in random order. */
+    private static List<long[]> records() {
+        List<long[]> result = new ArrayList<>();
+        for (long key : KEYS) {
+            for (int k = 0; k < MOVES.length; k += 1) {
+                result.add(new long[] { key, MOVES[k], VALUES[k] });
+            }
+        }
+        Collections.shuffle(result, new Random(42));
+        return result;
+    }
+
+    /** Return a book file holding the test records, written as
+     *  BookBuilder writes them. */
+    private static File bookFile() throws IOException {
+        List<long[]> records = records();
+        BookBuilder.sort(records);
+        File file = tempFile();
+        BookBuilder.write(file.getPath(), records);
+        return file;
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        OpeningBook book = new OpeningBook(bookFile().getPath());
+        assertEquals("size", KEYS.length * MOVES.length, book.size());
+        for (long key : KEYS) {
+            assertEquals("best move", MOVES[0], book.probe(key));
+        }
+        long[] missing = { Long.MAX_VALUE, -2, 1, 41, 43 };
+        for (long key : missing) {
+            assertEquals("missing key", StagedMoves.NO_MOVE, book.probe(key));
+        }
+    }
+
+    @Test
+    public void testRecordOrder() throws IOException {
+        File file = bookFile();
+        assertEquals("file size", OpeningBook.HEADER_SIZE
+                     + KEYS.length * MOVES.length * OpeningBook.RECORD_SIZE,
+                     file.length());
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            assertEquals("magic", OpeningBook.MAGIC, in.readInt());
+            assertEquals("count", KEYS.length * MOVES.length, in.readInt());
+            for (long key : KEYS) {
+                for (int k = 0; k < MOVES.length; k += 1) {
+                    assertEquals("key", key, in.readLong());
+                    assertEquals("move", MOVES[k], in.readShort());
+                    assertEquals("clamped value",
+                                 Math.max(-Short.MAX_VALUE,
+                                          Math.min(Short.MAX_VALUE,
+                                                   VALUES[k])),
+                                 in.readShort());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyBook() throws IOException {
+        File file = tempFile();
+        BookBuilder.write(file.getPath(), new ArrayList<>());
+        OpeningBook book = new OpeningBook(file.getPath());
+        assertEquals("size", 0, book.size());
+        assertEquals("no moves", StagedMoves.NO_MOVE, book.probe(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotABook() throws IOException {
+        File file = tempFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[OpeningBook.HEADER_SIZE + 1]);
+        }
+        new OpeningBook(file.getPath());
+    }
+
+}
@@ -1,5 +1,8 @@
 package tablut;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import static tablut.Utils.*;
 
 /** A generic Tablut Player.
@@ -39,6 +42,43 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** As for myMove(), except that a player that may think for a long
+     *  time returns as soon as it can after MOVENOW is set, with the best
+     *  move it has found so far.  By default, ignores MOVENOW. */
+    String myMove(AtomicBoolean moveNow) {
+        return myMove();
+    }
+
+    /** Return true iff I can analyze positions (see analyze).  By
+     *  default, false. */
+    boolean canAnalyze() {
+        return false;
+    }
+
+    /** Return up to COUNT of the best moves for the side to move on my
+     *  board, best first, each with its value and principal variation.
+     *  By default, I cannot analyze positions, and this is an error. */
+    List<Variation> analyze(int count) {
+        throw error("this player cannot analyze positions");
+    }
+
+    /** As for analyze(COUNT), except that a player that may think for a
+     *  long time returns as soon as it can after MOVENOW is set, with the
+     *  best moves it has found so far.  By default, ignores MOVENOW. */
+    List<Variation> analyze(int count, AtomicBoolean moveNow) {
+        return analyze(count);
+    }
+
+    /** Stop any thinking I am doing while it is not my move.  By
+     *  default, does nothing. */
+    void stopPondering() {
+    }
+
+    /** Release the threads I have started, stopping any pondering.  I
+     *  must not be thinking.  By default, does nothing. */
+    void close() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,35 @@
+package tablut;
+
+import java.util.List;
+
+/** A search engine that finds the best move for the side to move in a
+ *  position by searching it to successively greater depths.
+ *  @author Abel Yagubyan
+ */
+interface RootSearch {
+
+    /** Prepare to search BOARD, which becomes mine, for the side to move,
+     *  stopping at time DEADLINE (as from System.currentTimeMillis) once
+     *  a first move has been found. */
+    void start(Board board, long deadline);
+
+    /** Search my board to DEPTH levels.  Return true, having recorded
+     *  the result, if the search completes; return false if it was
+     *  stopped.  The first search is never stopped for lack of time. */
+    boolean iterate(int depth);
+
+    /** Return the principal variation of my deepest completed search:
+     *  the moves it expects both sides to play, starting with the side
+     *  to move. */
+    List<Move> principalVariation();
+
+    /** Return the value, for the side to move, of my deepest completed
+     *  search. */
+    int value();
+
+    /** Return the depth of my deepest completed search. */
+    int depth();
+
+    /** Return the number of nodes visited since start. */
+    long nodes();
+}
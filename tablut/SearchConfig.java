@@ -0,0 +1,220 @@
+package tablut;
+
+import static tablut.Utils.error;
+
+/** Settings for the automated player's search, as given on the command
+ *  line.  A template AI holds one of these and passes it on to the
+ *  players it creates.
+ *  @author Abel Yagubyan
+ */
+class SearchConfig {
+
+    /** Default time allowed for one move, in milliseconds. */
+    static final long DEFAULT_MOVE_TIME = 1000;
+
+    /** Time allowed for one move, in milliseconds. */
+    long moveTime = DEFAULT_MOVE_TIME;
+
+    /** Default size of the transposition table, in megabytes. */
+    static final int DEFAULT_HASH_MEGABYTES = 16;
+
+    /** Size of the transposition table, in megabytes. */
+    int hashMegabytes = DEFAULT_HASH_MEGABYTES;
+
+    /** Total time on each side's clock for a game, in milliseconds, or 0
+     *  if the sides are not on a clock. */
+    long clock = 0;
+
+    /** Number of threads searching for each move.  With the "smp"
+     *  engine, one main search and threads - 1 helpers. */
+    int threads = 1;
+
+    /** The search engine: "smp" for Lazy SMP (see AI), "ybw" for
+     *  Young Brothers Wait (see YoungBrothersSearch), or "mcts" for Monte
+     *  Carlo Tree Search (see MCTSPlayer). */
+    String engine = "smp";
+
+    /** The ybw engine searches nodes fewer than this many levels from the
+     *  leaves serially.  At least 1. */
+    int splitDepth = 4;
+
+    /** True iff the automated player goes on searching while its
+     *  opponent is thinking (see AI). */
+    boolean ponder = false;
+
+    /** The opening book consulted before searching, or null if there is
+     *  none. */
+    OpeningBook book = null;
+
+    /** The endgame tablebases consulted at the root and during the
+     *  search, or null if there are none. */
+    Tablebase tablebases = null;
+
+    /** If positive, the greatest depth to search, regardless of time. */
+    int depthLimit = 0;
+
+    /** True iff the search tries null-move pruning: skipping a turn and
+     *  searching the result to reduced depth, pruning if that is still
+     *  good enough for a cutoff. */
+    boolean nullMove = true;
+
+    /** Reduction, in plies, of the depth of a null-move search beyond the
+     *  ply skipped. */
+    int nullMoveReduction = 2;
+
+    /** Null moves are not tried when the side to move has fewer than
+     *  this many pieces, since such positions are prone to zugzwang. */
+    int nullMoveMinPieces = 5;
+
+    /** True iff the search prunes quiet moves near the leaves whose
+     *  static value is far below the window. */
+    boolean futility = true;
+
+    /** Deepest remaining depth at which futility pruning applies. */
+    int futilityDepth = 2;
+
+    /** Margin per ply of remaining depth for futility pruning. */
+    int futilityMargin = 30;
+
+    /** True iff the search drops to quiescence search near the leaves
+     *  when the static value is far below the window. */
+    boolean razoring = true;
+
+    /** Deepest remaining depth at which razoring applies. */
+    int razorDepth = 2;
+
+    /** Margin per ply of remaining depth for razoring. */
+    int razorMargin = 50;
+
+    /** True iff the search reduces the depth of late quiet moves. */
+    boolean lateMoveReductions = true;
+
+    /** Shallowest remaining depth at which late moves are reduced. */
+    int lmrMinDepth = 3;
+
+    /** Number of moves at each node searched before any are reduced. */
+    int lmrFullMoves = 3;
+
+    /** Reduction, in plies, of a late move; one more for moves beyond
+     *  four times lmrFullMoves. */
+    int lmrReduction = 1;
+
+    /** True iff the search extends moves that create a king escape
+     *  threat, block the king's last escape route, or leave the king one
+     *  piece from capture. */
+    boolean extensions = true;
+
+    /** Largest number of plies by which any one line may be extended. */
+    int extensionBudget = 1;
+
+    /** If positive, the greatest number of playouts the mcts engine makes
+     *  for one move, regardless of time. */
+    long playouts = 0;
+
+    /** Apply the settings in SPEC, a comma-separated list of KEY=VALUE
+     *  pairs, where each KEY is the name of one of the search fields
+     *  above from splitDepth to playouts.  Boolean
+     *  settings take the values on, off, true, or false.  Numeric
+     *  settings may not be negative, and splitDepth, lmrMinDepth and
+     *  lmrFullMoves must be at least 1. */
+    void set(String spec) {
+        for (String item : spec.split(",")) {
+            String[] parts = item.split("=", 2);
+            if (parts.length != 2) {
+                throw error("bad search setting: %s", item);
+            }
+            set(parts[0].trim(), parts[1].trim());
+        }
+    }
+
+    /** Set the search field named KEY to VALUE. */
+    private void set(String key, String value) {
+        try {
+            switch (key) {
+            case "splitDepth":
+                splitDepth = number(key, value, 1);
+                break;
+            case "depthLimit":
+                depthLimit = number(key, value, 0);
+                break;
+            case "nullMove":
+                nullMove = flag(value);
+                break;
+            case "nullMoveReduction":
+                nullMoveReduction = number(key, value, 0);
+                break;
+            case "nullMoveMinPieces":
+                nullMoveMinPieces = number(key, value, 0);
+                break;
+            case "futility":
+                futility = flag(value);
+                break;
+            case "futilityDepth":
+                futilityDepth = number(key, value, 0);
+                break;
+            case "futilityMargin":
+                futilityMargin = number(key, value, 0);
+                break;
+            case "razoring":
+                razoring = flag(value);
+                break;
+            case "razorDepth":
+                razorDepth = number(key, value, 0);
+                break;
+            case "razorMargin":
+                razorMargin = number(key, value, 0);
+                break;
+            case "lateMoveReductions":
+                lateMoveReductions = flag(value);
+                break;
+            case "lmrMinDepth":
+                lmrMinDepth = number(key, value, 1);
+                break;
+            case "lmrFullMoves":
+                lmrFullMoves = number(key, value, 1);
+                break;
+            case "lmrReduction":
+                lmrReduction = number(key, value, 0);
+                break;
+            case "extensions":
+                extensions = flag(value);
+                break;
+            case "extensionBudget":
+                extensionBudget = number(key, value, 0);
+                break;
+            case "playouts":
+                playouts = Long.parseLong(value);
+                if (playouts < 0) {
+                    throw error("bad value for %s: %s", key, value);
+                }
+                break;
+            default:
+                throw error("unknown search setting: %s", key);
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Return the integer denoted by VALUE, the setting for KEY, which
+     *  must be at least MIN. */
+    private static int number(String key, String value, int min) {
+        int result = Integer.parseInt(value);
+        if (result < min) {
+            throw error("bad value for %s: %s", key, value);
+        }
+        return result;
+    }
+
+    /** Return the boolean denoted by VALUE: on, off, true, or false. */
+    private static boolean flag(String value) {
+        switch (value) {
+        case "on": case "true":
+            return true;
+        case "off": case "false":
+            return false;
+        default:
+            throw error("bad boolean setting: %s", value);
+        }
+    }
+}
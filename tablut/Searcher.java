@@ -0,0 +1,632 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static tablut.Piece.*;
+
+/** The game-tree search done by an AI: iterative deepening of a negamax
+ *  principal variation search with aspiration windows, quiescence
+ *  search, forward pruning and extensions.  Several Searchers may search
+ *  the same position at once on separate threads (Lazy SMP), each on its
+ *  own Board, sharing what they find through a common transposition
+ *  table and stopping together when a shared condition becomes true.
+ *  A Searcher may also search subtrees on behalf of another engine
+ *  (see searchSubtree).
+ *  @author Abel Yagubyan
+ */
+class Searcher implements RootSearch {
+
+    /** A position-score magnitude indicating a win (for white if positive,
+     *  black if negative). */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    /** A position-score magnitude indicating a forced win in a subsequent
+     *  move.  This differs from WINNING_VALUE to avoid putting off wins. */
+    static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    /** A magnitude greater than a normal value. */
+    private static final int INFTY = Integer.MAX_VALUE;
+    /** The deepest search to be done. */
+    static final int MAX_DEPTH = 64;
+    /** The search checks the clock and stop flag once per this many nodes
+     *  (a power of 2). */
+    private static final int CHECK_INTERVAL = 1024;
+    /** Initial half-width of the window around the previous iteration's
+     *  value used for the next. */
+    private static final int ASPIRATION_WINDOW = 8;
+    /** A value that no search returns, indicating that none applies. */
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    /** A Searcher using the settings in CONFIG that shares TABLE with
+     *  other Searchers and stops whenever STOP returns true. */
+    Searcher(SearchConfig config, TranspositionTable table,
+             BooleanSupplier stop) {
+        _config = config;
+        _table = table;
+        _stop = stop;
+        for (int p = 0; p <= MAX_DEPTH; p += 1) {
+            _moveSources[p] = new StagedMoves(_ordering, p);
+        }
+    }
+
+    @Override
+    public void start(Board board, long deadline) {
+        _board = board;
+        _sense = board.turn() == WHITE ? 1 : -1;
+        _deadline = deadline;
+        _ordering.newSearch();
+        _stopped = false;
+        _nodes = 0;
+        _depth = 0;
+        _value = 0;
+        _principalVariation.clear();
+        _variations.clear();
+    }
+
+    @Override
+    public boolean iterate(int depth) {
+        _canStop = !_principalVariation.isEmpty();
+        int value = _value;
+        int delta = ASPIRATION_WINDOW;
+        int alpha = -INFTY, beta = INFTY;
+        if (_canStop && Math.abs(value) < WILL_WIN_VALUE) {
+            alpha = value - delta;
+            beta = value + delta;
+        }
+        while (true) {
+            value = search(_board, depth, 0, StagedMoves.NO_MOVE, _sense,
+                           alpha, beta);
+            if (_stopped) {
+                return false;
+            } else if (value <= alpha && alpha > -INFTY) {
+                delta *= 2;
+                alpha = delta >= INFTY / 4 || value <= -WILL_WIN_VALUE
+                    ? -INFTY : value - delta;
+            } else if (value >= beta && beta < INFTY) {
+                delta *= 2;
+                beta = delta >= INFTY / 4 || value >= WILL_WIN_VALUE
+                    ? INFTY : value + delta;
+            } else {
+                break;
+            }
+        }
+        _principalVariation.clear();
+        for (int p = 0; p < _pvLength[0]; p += 1) {
+            _principalVariation.add(Move.mv(_pv[0][p]));
+        }
+        _value = value;
+        _depth = depth;
+        return true;
+    }
+
+    /** Search my board to DEPTH levels, as for iterate, but find the
+     *  values and principal variations of its COUNT best moves (or of all
+     *  its moves, if it has fewer), which variations() then returns, best
+     *  first.  The moves of the previous iteration's variations are tried
+     *  first, in order.  Until COUNT moves have been searched, each is
+     *  searched with the full window; after that, each is searched with
+     *  a null window at the value of the COUNT-th best move so far, and
+     *  only if it does better, searched again with the window narrowed
+     *  to values above that one.  Return true iff the search completed;
+     *  otherwise, the results of the previous iteration remain. */
+    boolean iterateVariations(int depth, int count) {
+        _canStop = !_variations.isEmpty();
+        Board board = _board;
+        int[] moves = _rootMoves;
+        int n = 0;
+        for (Variation variation : _variations) {
+            moves[n] = variation.move().packed();
+            n += 1;
+        }
+        int ranked = n;
+        StagedMoves source = _moveSources[0];
+        source.reset(board, StagedMoves.NO_MOVE);
+        for (int move = source.next(); move != StagedMoves.NO_MOVE;
+             move = source.next()) {
+            int plain = Move.pack(Move.from(move), Move.to(move));
+            boolean seen = false;
+            for (int i = 0; i < ranked && !seen; i += 1) {
+                seen = moves[i] == plain;
+            }
+            if (!seen) {
+                moves[n] = plain;
+                n += 1;
+            }
+        }
+        List<Variation> found = new ArrayList<>();
+        List<Move> line = new ArrayList<>();
+        _extensions[1] = 0;
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            int bound = found.size() < count ? -INFTY
+                : found.get(count - 1).value();
+            board.makeMove(move);
+            int val;
+            if (bound == -INFTY) {
+                val = -search(board, depth - 1, 1, move, -_sense,
+                              -INFTY, INFTY);
+            } else {
+                val = -search(board, depth - 1, 1, move, -_sense,
+                              -bound - 1, -bound);
+                if (val > bound && !_stopped) {
+                    val = -search(board, depth - 1, 1, move, -_sense,
+                                  -INFTY, -bound);
+                }
+            }
+            board.undo();
+            if (_stopped) {
+                return false;
+            }
+            if (val > bound) {
+                line.clear();
+                line.add(Move.mv(move));
+                for (int p = 1; p < _pvLength[1]; p += 1) {
+                    line.add(Move.mv(_pv[1][p]));
+                }
+                int k = found.size();
+                while (k > 0 && found.get(k - 1).value() < val) {
+                    k -= 1;
+                }
+                found.add(k, new Variation(val, line));
+                if (found.size() > count) {
+                    found.remove(count);
+                }
+            }
+        }
+        Variation best = found.get(0);
+        _table.store(board.hashKey(), depth, TranspositionTable.EXACT,
+                     best.value(), best.move().packed());
+        _variations.clear();
+        _variations.addAll(found);
+        _principalVariation.clear();
+        _principalVariation.addAll(best.moves());
+        _value = best.value();
+        _depth = depth;
+        return true;
+    }
+
+    /** Return the variations found by the last iteration of
+     *  iterateVariations that completed, best first. */
+    List<Variation> variations() {
+        return Collections.unmodifiableList(_variations);
+    }
+
+    /** Return the value of BOARD, reached by packed move PREV (or
+     *  StagedMoves.NO_MOVE), searched to DEPTH levels for the side
+     *  to move, whose sense is SENSE, with the window ALPHA .. BETA, as
+     *  part of a larger search by another engine.  The search stops,
+     *  returning an unreliable value, if STOP returns true (checked
+     *  periodically); see stopped().  Node counts accumulate across
+     *  calls. */
+    int searchSubtree(Board board, int prev, int depth, int sense,
+                      int alpha, int beta, BooleanSupplier stop) {
+        _stop = stop;
+        _canStop = false;
+        _stopped = false;
+        _extensions[0] = 0;
+        return search(board, depth, 0, prev, sense, alpha, beta);
+    }
+
+    /** Return true iff my last search was stopped before completing. */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** Search my board to increasing depths, starting at FIRSTDEPTH,
+     *  until stopped or a win or loss is certain. */
+    void think(int firstDepth) {
+        for (int depth = firstDepth; depth <= MAX_DEPTH; depth += 1) {
+            if (!iterate(depth) || Math.abs(_value) >= WILL_WIN_VALUE) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public List<Move> principalVariation() {
+        return Collections.unmodifiableList(_principalVariation);
+    }
+
+    @Override
+    public int value() {
+        return _value;
+    }
+
+    @Override
+    public int depth() {
+        return _depth;
+    }
+
+    @Override
+    public long nodes() {
+        return _nodes;
+    }
+
+    /** Count a node, and return true iff the search must stop, because
+     *  my time is up or because my stop condition has become true. */
+    private boolean timeUp() {
+        _nodes += 1;
+        if (!_stopped && (_nodes & (CHECK_INTERVAL - 1)) == 0
+            && (_stop.getAsBoolean()
+                || _canStop && System.currentTimeMillis() > _deadline)) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
+
+    /** Return the value of position BOARD searched to DEPTH levels (by
+     *  quiescence search if DEPTH is not positive), as seen by the side
+     *  to move, whose sense (1 for white, -1 for black) is SENSE.  The
+     *  value is exact if it is strictly between
+     *  ALPHA and BETA, and otherwise is a bound on the exact value on the
+     *  same side of the window.  BOARD is PLY moves from the root of the
+     *  search, reached by packed move PREV (StagedMoves.NO_MOVE at the
+     *  root).  If the window is wider than a single value, sets
+     *  _pv[PLY] and _pvLength[PLY] to the best line found from BOARD.
+     *  The first move from each node is searched with the full window;
+     *  the rest with a null window, searched again with the full one
+     *  only if they turn out better than the best so far.  Away from the
+     *  principal variation, the forward pruning enabled in _config
+     *  applies: see prune, reduction, and futility pruning, which skips
+     *  the quiet moves of nodes near the leaves whose static value is
+     *  far below ALPHA.  Tactically critical moves are searched a ply
+     *  deeper: see extension. */
+    private int search(Board board, int depth, int ply, int prev, int sense,
+                       int alpha, int beta) {
+        _pvLength[ply] = ply;
+        if (timeUp()) {
+            return 0;
+        }
+        if (board.winner() != null || ply == MAX_DEPTH) {
+            return sense * staticScore(board);
+        }
+        if (ply > 0 && _config.tablebases != null) {
+            int code = _config.tablebases.probe(board);
+            if (code >= 0) {
+                return tablebaseValue(code);
+            }
+        }
+        if (depth <= 0) {
+            return quiesce(board, ply, sense, alpha, beta);
+        }
+        boolean pvNode = alpha + 1 < beta;
+        long key = board.hashKey();
+        long entry = _table.probe(key);
+        int hashMove = StagedMoves.NO_MOVE;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (!pvNode && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= beta
+                    || bound == TranspositionTable.UPPER && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+        int eval = 0;
+        if (!pvNode) {
+            eval = sense * staticScore(board);
+            int value = prune(board, depth, ply, prev, sense, eval, beta);
+            if (value != NO_VALUE) {
+                return value;
+            }
+        }
+        boolean futile = !pvNode && _config.futility
+            && depth <= _config.futilityDepth
+            && eval + _config.futilityMargin * depth <= alpha;
+        int escapes = board.kingEscapes();
+        boolean nearCapture = board.kingNearCapture();
+        int alpha0 = alpha;
+        int best = -INFTY, bestMove = StagedMoves.NO_MOVE;
+        boolean first = true;
+        int searched = 0;
+        StagedMoves moves = _moveSources[ply];
+        moves.reset(board, hashMove, prev);
+        for (int move = moves.next(); move != StagedMoves.NO_MOVE;
+             move = moves.next()) {
+            boolean quiet = !Move.isCapture(move)
+                && Move.from(move) != board.kingIndex();
+            board.makeMove(move);
+            int ext = extension(board, ply, sense, escapes, nearCapture);
+            if (futile && quiet && ext == 0 && !first) {
+                board.undo();
+                continue;
+            }
+            _extensions[ply + 1] = _extensions[ply] + ext;
+            int newDepth = depth - 1 + ext;
+            int val;
+            if (first) {
+                val = -search(board, newDepth, ply + 1, move, -sense,
+                              -beta, -alpha);
+            } else {
+                int reduction =
+                    quiet && ext == 0 ? reduction(_config, depth, searched) : 0;
+                val = -search(board, newDepth - reduction, ply + 1, move,
+                              -sense, -alpha - 1, -alpha);
+                if (reduction > 0 && val > alpha && !_stopped) {
+                    val = -search(board, newDepth, ply + 1, move, -sense,
+                                  -alpha - 1, -alpha);
+                }
+                if (val > alpha && val < beta && pvNode && !_stopped) {
+                    val = -search(board, newDepth, ply + 1, move, -sense,
+                                  -beta, -alpha);
+                }
+            }
+            board.undo();
+            first = false;
+            searched += 1;
+            if (_stopped) {
+                return 0;
+            }
+            if (val > best) {
+                best = val;
+                if (val > alpha) {
+                    alpha = val;
+                    bestMove = move;
+                    if (pvNode) {
+                        savePV(ply, move);
+                    }
+                    if (alpha >= beta) {
+                        cutoff(key, depth, ply, prev, val, move);
+                        return val;
+                    }
+                }
+            }
+        }
+        if (first) {
+            return sense * staticScore(board);
+        }
+        _table.store(key, depth,
+                     best > alpha0 ? TranspositionTable.EXACT
+                     : TranspositionTable.UPPER,
+                     best, bestMove);
+        return best;
+    }
+
+    /** Try the pruning done before searching any moves at a non-PV node
+     *  of search(BOARD, DEPTH, PLY, PREV, SENSE, BETA - 1, BETA), whose
+     *  static value for the side to move is EVAL.  Return the value of
+     *  the node if one of them applies, and otherwise NO_VALUE.
+     *  Razoring: near the leaves, when EVAL is far below the window, the
+     *  node is valued by quiescence search if that confirms it fails
+     *  low.  Null-move pruning: when EVAL is at least BETA, the side to
+     *  move passes, and if a reduced-depth search still fails high, so
+     *  does the node.  Null moves are not tried twice in a row (a null
+     *  move is passed on as PREV = StagedMoves.NO_MOVE), nor when the
+     *  side to move has few pieces, since zugzwang is then likely. */
+    private int prune(Board board, int depth, int ply, int prev, int sense,
+                      int eval, int beta) {
+        if (_config.razoring && depth <= _config.razorDepth
+            && eval + _config.razorMargin * depth < beta - 1) {
+            int val = quiesce(board, ply, sense, beta - 1, beta);
+            if (_stopped) {
+                return 0;
+            } else if (val < beta) {
+                return val;
+            }
+        }
+        if (_config.nullMove && prev != StagedMoves.NO_MOVE && eval >= beta
+            && depth > 1
+            && board.pieceCount(board.turn()) >= _config.nullMoveMinPieces) {
+            board.makeNullMove();
+            _extensions[ply + 1] = _extensions[ply];
+            int val = -search(board,
+                              Math.max(0,
+                                       depth - 1 - _config.nullMoveReduction),
+                              ply + 1, StagedMoves.NO_MOVE, -sense,
+                              -beta, -beta + 1);
+            board.undoNullMove();
+            if (_stopped) {
+                return 0;
+            } else if (val >= beta) {
+                return Math.min(val, WILL_WIN_VALUE - 1);
+            }
+        }
+        return NO_VALUE;
+    }
+
+    /** Return the number of plies (0 or 1) by which to extend the search
+     *  of the move just made on BOARD by the side whose sense is SENSE,
+     *  PLY moves from the root.  Before the move, the king could reach
+     *  ESCAPES edge squares, and was one piece from capture iff
+     *  NEARCAPTURE.  White moves are extended when they give the king a
+     *  way to the edge; black moves when they close the king's last way
+     *  to the edge or bring it within one piece of capture.  No line is
+     *  extended more than _config.extensionBudget plies in all. */
+    private int extension(Board board, int ply, int sense, int escapes,
+                          boolean nearCapture) {
+        if (!_config.extensions || board.winner() != null
+            || _extensions[ply] >= _config.extensionBudget) {
+            return 0;
+        } else if (sense == 1) {
+            return escapes == 0 && board.kingEscapes() > 0 ? 1 : 0;
+        } else if (escapes > 0 && board.kingEscapes() == 0
+                   || !nearCapture && board.kingNearCapture()) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Return the number of plies by which to reduce the search of a
+     *  quiet move with DEPTH levels left that follows SEARCHED moves
+     *  already searched at its node, under the settings in CONFIG. */
+    static int reduction(SearchConfig config, int depth, int searched) {
+        if (!config.lateMoveReductions || depth < config.lmrMinDepth
+            || searched < config.lmrFullMoves) {
+            return 0;
+        }
+        int r = config.lmrReduction;
+        if (searched >= 4 * config.lmrFullMoves) {
+            r += 1;
+        }
+        return Math.min(r, depth - 1);
+    }
+
+    /** Return the value of position BOARD, PLY moves from the root of the
+     *  search, for the side to move, whose sense is SENSE, as for search
+     *  but considering only moves that capture or take the king to the
+     *  edge.  The side to move may instead "stand pat" on the static
+     *  value of BOARD, so that quiet positions are valued statically
+     *  and captures are followed until none remain. */
+    private int quiesce(Board board, int ply, int sense, int alpha,
+                        int beta) {
+        _pvLength[ply] = ply;
+        if (timeUp()) {
+            return 0;
+        }
+        int best = sense * staticScore(board);
+        if (board.winner() != null || ply == MAX_DEPTH || best >= beta) {
+            return best;
+        }
+        boolean pvNode = alpha + 1 < beta;
+        alpha = Math.max(alpha, best);
+        int[] moves = _quiescenceMoves[ply];
+        int n = 0, king = board.kingIndex();
+        if (sense == 1 && king >= 0) {
+            n = board.destinations(king, moves, 0);
+            int escapes = 0;
+            for (int i = 0; i < n; i += 1) {
+                if (Square.sq(moves[i]).isEdge()) {
+                    moves[escapes] = Move.pack(king, moves[i]);
+                    escapes += 1;
+                }
+            }
+            n = escapes;
+        }
+        n = board.generateCaptures(board.turn(), moves, n);
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (Move.isCapture(move) && Move.from(move) == king
+                && Square.sq(Move.to(move)).isEdge()) {
+                continue;
+            }
+            board.makeMove(move);
+            int val = -quiesce(board, ply + 1, -sense, -beta, -alpha);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (val > best) {
+                best = val;
+                if (val > alpha) {
+                    alpha = val;
+                    if (pvNode) {
+                        savePV(ply, move);
+                    }
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Set the principal variation at PLY to MOVE followed by the
+     *  principal variation at PLY + 1. */
+    private void savePV(int ply, int move) {
+        int[] pv = _pv[ply], next = _pv[ply + 1];
+        pv[ply] = move;
+        int n = _pvLength[ply + 1];
+        for (int p = ply + 1; p < n; p += 1) {
+            pv[p] = next[p];
+        }
+        _pvLength[ply] = Math.max(n, ply + 1);
+    }
+
+    /** Record that packed MOVE, played PLY moves from the root in reply
+     *  to PREV with DEPTH levels left, caused a cutoff in the position
+     *  whose hash key is KEY, giving it a value of at least VAL. */
+    private void cutoff(long key, int depth, int ply, int prev, int val,
+                        int move) {
+        _table.store(key, depth, TranspositionTable.LOWER, val, move);
+        if (!Move.isCapture(move)) {
+            _ordering.cutoff(move, ply, prev, depth);
+        }
+    }
+
+    /** Killer, history, and countermove tables for ordering quiet
+     *  moves. */
+    private final MoveOrdering _ordering = new MoveOrdering(MAX_DEPTH);
+
+    /** _quiescenceMoves[p] holds the moves searched by quiesce at ply
+     *  P. */
+    private final int[][] _quiescenceMoves =
+        new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+
+    /** _extensions[p] is the number of plies by which the line to the
+     *  current node at ply P has been extended. */
+    private final int[] _extensions = new int[MAX_DEPTH + 1];
+
+    /** _moveSources[p] produces the moves searched by search at ply P. */
+    private final StagedMoves[] _moveSources = new StagedMoves[MAX_DEPTH + 1];
+
+    /** Return the value for the side to move of a position whose
+     *  tablebase code (see Tablebase) is CODE: 0 if drawn, and otherwise
+     *  a win or loss whose magnitude is at least WILL_WIN_VALUE and is
+     *  greater the nearer the end of the game. */
+    static int tablebaseValue(int code) {
+        if (code == 0) {
+            return 0;
+        }
+        int distance = code - 1;
+        int value = WILL_WIN_VALUE
+            + Math.max(0, WINNING_VALUE - WILL_WIN_VALUE - 1 - distance);
+        return distance % 2 == 1 ? value : -value;
+    }
+
+    /** Return a heuristic value for BOARD. */
+    private int staticScore(Board board) {
+        Piece win = board.winner();
+        if (win == WHITE) {
+            return WINNING_VALUE;
+        } else if (win == BLACK) {
+            return -WINNING_VALUE;
+        } else {
+            int whitenum = board.mobility(WHITE);
+            int blacknum = board.mobility(BLACK);
+            int kingnum = board.mobility(KING);
+            return whitenum + kingnum - blacknum;
+        }
+    }
+
+    /** Settings for my search. */
+    private final SearchConfig _config;
+    /** Results of searches, shared with other Searchers. */
+    private final TranspositionTable _table;
+    /** Returns true when I must stop. */
+    private BooleanSupplier _stop;
+    /** The board I search. */
+    private Board _board;
+    /** Sense (1 for white, -1 for black) of the side to move on _board. */
+    private int _sense;
+    /** Time (as from System.currentTimeMillis) at which the current
+     *  search must stop. */
+    private long _deadline;
+    /** True iff the current search may stop when time is up (false until
+     *  a first move has been found). */
+    private boolean _canStop;
+    /** True iff the current search has been stopped. */
+    private boolean _stopped;
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** _pv[p][p .. _pvLength[p] - 1] is the best line found from the
+     *  current node at ply p, as packed moves. */
+    private final int[][] _pv = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+    /** See _pv. */
+    private final int[] _pvLength = new int[MAX_DEPTH + 1];
+    /** The principal variation of the deepest completed search. */
+    private final List<Move> _principalVariation = new ArrayList<>();
+    /** The variations found by the deepest completed search by
+     *  iterateVariations. */
+    private final List<Variation> _variations = new ArrayList<>();
+    /** The moves searched by iterateVariations. */
+    private final int[] _rootMoves = new int[Board.MAX_MOVES];
+    /** Value, for the side to move, of the deepest completed search. */
+    private int _value;
+    /** Depth of the deepest completed search. */
+    private int _depth;
+}
@@ -0,0 +1,238 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+
+/** A reusable source of the legal moves of the side to move on a Board,
+ *  produced lazily in stages so that the moves most likely to cause a
+ *  cutoff are found before the rest are generated or classified:
+ *  first a suggested move (such as one from the transposition table),
+ *  then king moves that reach or open a line to the edge, then
+ *  captures, then the remaining (quiet) moves, ranked by a MoveOrdering
+ *  if one is supplied.  Moves are packed ints (see Move.pack); captures
+ *  carry the Move.CAPTURE flag.
+ *  @author Abel Yagubyan
+ */
+class StagedMoves {
+
+    /** Value returned by next() when there are no more moves. */
+    static final int NO_MOVE = -1;
+
+    /** Stages, in the order they are produced. */
+    private static final int
+        FIRST_STAGE = 0,
+        KING_STAGE = 1,
+        CAPTURE_STAGE = 2,
+        QUIET_STAGE = 3,
+        DONE = 4;
+
+    /** A source that produces quiet moves in generation order. */
+    StagedMoves() {
+        this(null, 0);
+    }
+
+    /** A source that produces quiet moves in the order given by ORDERING
+     *  (if not null) for moves at ply PLY of a search. */
+    StagedMoves(MoveOrdering ordering, int ply) {
+        _ordering = ordering;
+        _ply = ply;
+    }
+
+    /** Start producing the moves for the side to move on BOARD, which
+     *  must not change (other than by moves made and undone between
+     *  calls to next()) until the moves are exhausted. */
+    void reset(Board board) {
+        reset(board, NO_MOVE);
+    }
+
+    /** Start producing the moves for the side to move on BOARD, as for
+     *  reset(BOARD), beginning with the packed move FIRST if it is not
+     *  NO_MOVE and is legal. */
+    void reset(Board board, int first) {
+        reset(board, first, NO_MOVE);
+    }
+
+    /** Start producing the moves for the side to move on BOARD, as for
+     *  reset(BOARD, FIRST), where the packed move PREV (or NO_MOVE) led
+     *  to BOARD's position. */
+    void reset(Board board, int first, int prev) {
+        _board = board;
+        _prev = prev;
+        _stage = FIRST_STAGE;
+        _first = first == NO_MOVE ? NO_MOVE : first & ~Move.CAPTURE;
+        _next = _count = _captureCount = _quietCount = 0;
+    }
+
+    /** Return the next move, or NO_MOVE if there are no more. */
+    int next() {
+        while (true) {
+            switch (_stage) {
+            case FIRST_STAGE:
+                _stage = KING_STAGE;
+                if (_first != NO_MOVE
+                    && Move.from(_first) < Square.NUM_SQUARES
+                    && Move.to(_first) < Square.NUM_SQUARES
+                    && _board.isLegal(Square.sq(Move.from(_first)),
+                                      Square.sq(Move.to(_first)))) {
+                    return _board.isCapture(_first)
+                        ? _first | Move.CAPTURE : _first;
+                }
+                _first = NO_MOVE;
+                break;
+            case KING_STAGE:
+                if (_count == 0) {
+                    generateKingMoves();
+                }
+                if (_next < _count) {
+                    int move = _moves[_next];
+                    _next += 1;
+                    if (move != _first) {
+                        return _board.isCapture(move)
+                            ? move | Move.CAPTURE : move;
+                    }
+                    break;
+                }
+                _stage = CAPTURE_STAGE;
+                _captureCount =
+                    _board.generateCaptures(_board.turn(), _captures, 0);
+                _next = 0;
+                break;
+            case CAPTURE_STAGE:
+                while (_next < _captureCount) {
+                    int move = _captures[_next];
+                    _next += 1;
+                    if ((move & ~Move.CAPTURE) != _first
+                        && !isEscape(move)) {
+                        return move;
+                    }
+                }
+                _stage = QUIET_STAGE;
+                generateQuietMoves();
+                _next = 0;
+                sortQuietMoves();
+                break;
+            case QUIET_STAGE:
+                if (_next < _quietCount) {
+                    _next += 1;
+                    return _moves[_next - 1];
+                }
+                _stage = DONE;
+                break;
+            default:
+                return NO_MOVE;
+            }
+        }
+    }
+
+    /** Fill _moves with the moves not produced in earlier stages (none of
+     *  which capture), setting _quietCount to their number. */
+    private void generateQuietMoves() {
+        int n = _board.generateMoves(_board.turn(), _moves, 0);
+        for (int i = 0; i < n; i += 1) {
+            int move = _moves[i];
+            if (move != _first && !isEscape(move) && !isCaptureMove(move)) {
+                _moves[_quietCount] = move;
+                _quietCount += 1;
+            }
+        }
+    }
+
+    /** Return true iff the unflagged MOVE was produced in
+     *  CAPTURE_STAGE. */
+    private boolean isCaptureMove(int move) {
+        move |= Move.CAPTURE;
+        for (int i = 0; i < _captureCount; i += 1) {
+            if (_captures[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Sort the first _quietCount entries of _moves into decreasing order
+     *  of their scores under _ordering, if there is one. */
+    private void sortQuietMoves() {
+        if (_ordering == null || _quietCount < 2) {
+            return;
+        }
+        for (int i = 0; i < _quietCount; i += 1) {
+            int move = _moves[i];
+            _keys[i] = (long) -_ordering.score(move, _ply, _prev) << 32
+                | move;
+        }
+        Arrays.sort(_keys, 0, _quietCount);
+        for (int i = 0; i < _quietCount; i += 1) {
+            _moves[i] = (int) _keys[i];
+        }
+    }
+
+    /** Fill _moves with the king moves to be tried first: those that reach
+     *  the edge, followed by those that leave the king an open line to
+     *  it.  Sets _count to their number. */
+    private void generateKingMoves() {
+        int king = _board.kingIndex();
+        if (_board.turn() != WHITE || king < 0) {
+            return;
+        }
+        int n = _board.destinations(king, _moves, 0);
+        for (int i = 0; i < n; i += 1) {
+            if (Square.sq(_moves[i]).isEdge()) {
+                swap(i, _count);
+                _count += 1;
+            }
+        }
+        for (int i = _count; i < n; i += 1) {
+            if (_board.kingReachesEdge(king, _moves[i])) {
+                swap(i, _count);
+                _count += 1;
+            }
+        }
+        for (int i = 0; i < _count; i += 1) {
+            _moves[i] = Move.pack(king, _moves[i]);
+        }
+    }
+
+    /** Exchange _moves[I] and _moves[J]. */
+    private void swap(int i, int j) {
+        int tmp = _moves[i];
+        _moves[i] = _moves[j];
+        _moves[j] = tmp;
+    }
+
+    /** Return true iff MOVE is one of the king moves already produced in
+     *  KING_STAGE. */
+    private boolean isEscape(int move) {
+        return Move.from(move) == _board.kingIndex()
+            && _board.kingReachesEdge(Move.from(move), Move.to(move));
+    }
+
+    /** Ranks quiet moves, or null. */
+    private final MoveOrdering _ordering;
+    /** The search ply whose moves I produce. */
+    private final int _ply;
+    /** The move that led to the current position, or NO_MOVE. */
+    private int _prev;
+    /** The move produced in FIRST_STAGE, or NO_MOVE. */
+    private int _first;
+    /** The board whose moves I produce. */
+    private Board _board;
+    /** The stage I am producing. */
+    private int _stage;
+    /** King moves in KING_STAGE; quiet moves in QUIET_STAGE. */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+    /** Capturing moves, flagged with Move.CAPTURE, from CAPTURE_STAGE
+     *  on. */
+    private final int[] _captures = new int[Board.MAX_MOVES];
+    /** Sort keys for quiet moves: negated score in the high word, move
+     *  in the low word. */
+    private final long[] _keys = new long[Board.MAX_MOVES];
+    /** Number of king moves in _moves. */
+    private int _count;
+    /** Number of valid entries in _captures. */
+    private int _captureCount;
+    /** Index in _moves or _captures of the next move to examine. */
+    private int _next;
+    /** Number of quiet moves in _moves. */
+    private int _quietCount;
+}
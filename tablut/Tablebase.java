@@ -0,0 +1,233 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static tablut.Piece.*;
+
+/** A set of endgame tablebases: files, written by TablebaseGenerator,
+ *  giving the outcome with best play of every position of some classes
+ *  of material, consulted through memory-mapped buffers.  The class WvB
+ *  is the king and W other white pieces against B black pieces.  Each
+ *  position of class WvB has an index (see index) from 0 to size(W, B)
+ *  - 1, and the file for the class (named as by fileName) holds a code
+ *  of a fixed number of bits for each index: 0 if the position is
+ *  impossible or drawn (neither side can force a win), and otherwise one
+ *  more than the number of plies to the end of the game with best play,
+ *  which is even if the side to move wins and odd if it loses.  The
+ *  codes follow a header of HEADER_SIZE bytes (the ints MAGIC, W, B, and
+ *  the number of bits per code), packed in order into longs, starting
+ *  from the least significant bit.  Repetitions and the move limit are
+ *  not considered.
+ *  @author Abel Yagubyan
+ */
+class Tablebase {
+
+    /** The first int of a tablebase file. */
+    static final int MAGIC = 0x54424231;
+
+    /** Size in bytes of the header. */
+    static final int HEADER_SIZE = 16;
+
+    /** The largest numbers of white pieces other than the king, and of
+     *  black pieces, in a class. */
+    static final int MAX_WHITE = 8, MAX_BLACK = 16;
+
+    /** The number of squares. */
+    private static final int NUM_SQUARES = Board.SIZE * Board.SIZE;
+
+    /** BINOMIAL[n][k] is n choose k. */
+    private static final long[][] BINOMIAL =
+        new long[NUM_SQUARES + 1][MAX_BLACK + 1];
+
+    static {
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= MAX_BLACK && k <= n; k += 1) {
+                BINOMIAL[n][k] =
+                    BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    /** The names of tablebase files. */
+    private static final Pattern FILE_NAME =
+        Pattern.compile("k(\\d+)v(\\d+)\\.tb");
+
+    /** The tablebases in the files in the directory named DIRNAME: those
+     *  whose names are as given by fileName. */
+    Tablebase(String dirName) throws IOException {
+        File[] files = new File(dirName).listFiles();
+        if (files == null) {
+            throw new IOException("not a directory: " + dirName);
+        }
+        for (File file : files) {
+            Matcher name = FILE_NAME.matcher(file.getName());
+            if (!name.matches()) {
+                continue;
+            }
+            int white = Integer.parseInt(name.group(1)),
+                black = Integer.parseInt(name.group(2));
+            if (white > MAX_WHITE || black > MAX_BLACK) {
+                continue;
+            }
+            MappedByteBuffer buffer;
+            try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                     channel.size());
+            }
+            if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC || buffer.getInt(4) != white
+                || buffer.getInt(8) != black) {
+                throw new IOException("not a tablebase: " + file);
+            }
+            int bits = buffer.getInt(12);
+            if (bits < 1 || bits > Integer.SIZE - 1
+                || (size(white, black) * bits + Long.SIZE - 1) / Long.SIZE
+                   * Long.BYTES + HEADER_SIZE > buffer.capacity()) {
+                throw new IOException("truncated tablebase: " + file);
+            }
+            _tables[white][black] = buffer;
+            _bits[white][black] = bits;
+            _count += 1;
+        }
+    }
+
+    /** Return the number of classes I cover. */
+    int count() {
+        return _count;
+    }
+
+    /** Return true iff I have the table for class WHITEvBLACK. */
+    boolean covers(int white, int black) {
+        return white <= MAX_WHITE && black <= MAX_BLACK
+            && _tables[white][black] != null;
+    }
+
+    /** Return the code (see above) of BOARD, which must have a king and no
+     *  winner, or -1 if I do not cover its class. */
+    int probe(Board board) {
+        int white = board.pieceCount(WHITE) - 1,
+            black = board.pieceCount(BLACK);
+        if (!covers(white, black)) {
+            return -1;
+        }
+        return code(_tables[white][black], _bits[white][black],
+                    index(white, black, board));
+    }
+
+    /** Return the code of BITS bits at index INDEX of the table in
+     *  BUFFER. */
+    private static int code(MappedByteBuffer buffer, int bits, long index) {
+        long pos = index * bits;
+        int word = (int) (pos >>> 6), offset = (int) (pos & (Long.SIZE - 1));
+        long value =
+            buffer.getLong(HEADER_SIZE + word * Long.BYTES) >>> offset;
+        if (offset + bits > Long.SIZE) {
+            value |= buffer.getLong(HEADER_SIZE + (word + 1) * Long.BYTES)
+                << (Long.SIZE - offset);
+        }
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    /** Return the name of the file holding the table for class
+     *  WHITEvBLACK. */
+    static String fileName(int white, int black) {
+        return String.format("k%dv%d.tb", white, black);
+    }
+
+    /** Return the number of indices of class WHITEvBLACK. */
+    static long size(int white, int black) {
+        return 2L * NUM_SQUARES * BINOMIAL[NUM_SQUARES - 1][white]
+            * BINOMIAL[NUM_SQUARES - 1 - white][black];
+    }
+
+    /** Return the index of BOARD, which must have a king, WHITE other
+     *  white pieces, and BLACK black pieces.  The index combines, from
+     *  most to least significant, the side to move (white first), the
+     *  square of the king, the set of squares of the other white pieces
+     *  among the remaining squares, and the set of squares of the black
+     *  pieces among those still remaining, each set numbered by its rank
+     *  in the combinatorial number system. */
+    static long index(int white, int black, Board board) {
+        int king = board.kingIndex();
+        long whiteRank = 0, blackRank = 0;
+        int whites = 0, blacks = 0;
+        for (int sq = 0; sq < NUM_SQUARES; sq += 1) {
+            Piece piece = board.get(sq);
+            if (piece == WHITE) {
+                whites += 1;
+                whiteRank += BINOMIAL[sq < king ? sq : sq - 1][whites];
+            } else if (piece == BLACK) {
+                blacks += 1;
+                blackRank += BINOMIAL[sq - whites - (sq < king ? 0 : 1)]
+                    [blacks];
+            }
+        }
+        long side = board.turn() == WHITE ? 0 : 1;
+        return ((side * NUM_SQUARES + king)
+                * BINOMIAL[NUM_SQUARES - 1][white] + whiteRank)
+            * BINOMIAL[NUM_SQUARES - 1 - white][black] + blackRank;
+    }
+
+    /** Clear BOARD and set up on it the position of class WHITEvBLACK
+     *  whose index is INDEX.  SCRATCH must have room for BLACK
+     *  entries. */
+    static void setUp(int white, int black, long index, Board board,
+                      int[] scratch) {
+        long blackCount = BINOMIAL[NUM_SQUARES - 1 - white][black];
+        long whiteCount = BINOMIAL[NUM_SQUARES - 1][white];
+        long blackRank = index % blackCount;
+        index /= blackCount;
+        long whiteRank = index % whiteCount;
+        index /= whiteCount;
+        int king = (int) (index % NUM_SQUARES);
+        board.clear(index / NUM_SQUARES == 0 ? WHITE : BLACK);
+        board.put(KING, Square.sq(king));
+        int n = NUM_SQUARES - 1;
+        for (int k = white; k > 0; k -= 1) {
+            n = unrank(whiteRank, k, n);
+            whiteRank -= BINOMIAL[n][k];
+            board.put(WHITE, Square.sq(n < king ? n : n + 1));
+        }
+        n = NUM_SQUARES - 1 - white;
+        for (int k = black; k > 0; k -= 1) {
+            n = unrank(blackRank, k, n);
+            blackRank -= BINOMIAL[n][k];
+            scratch[k - 1] = n;
+        }
+        int free = 0;
+        for (int sq = 0, k = 0; k < black; sq += 1) {
+            if (board.get(sq) == EMPTY) {
+                if (free == scratch[k]) {
+                    board.put(BLACK, Square.sq(sq));
+                    k += 1;
+                }
+                free += 1;
+            }
+        }
+    }
+
+    /** Return the largest n < LIMIT such that n choose K <= RANK. */
+    private static int unrank(long rank, int k, int limit) {
+        int n = limit - 1;
+        while (BINOMIAL[n][k] > rank) {
+            n -= 1;
+        }
+        return n;
+    }
+
+    /** _tables[w][b] is the table for class wvb, or null. */
+    private final MappedByteBuffer[][] _tables =
+        new MappedByteBuffer[MAX_WHITE + 1][MAX_BLACK + 1];
+    /** _bits[w][b] is the number of bits per code of _tables[w][b]. */
+    private final int[][] _bits = new int[MAX_WHITE + 1][MAX_BLACK + 1];
+    /** The number of tables. */
+    private int _count;
+}
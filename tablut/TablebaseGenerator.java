@@ -0,0 +1,407 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static tablut.Piece.*;
+
+/** Generates endgame tablebases (see Tablebase) by retrograde analysis.
+ *  A class is generated after all the classes that its captures lead
+ *  to.  Every position of the class is first examined on its own: one
+ *  whose side to move has no move is lost at once, one with a move that
+ *  wins at once or captures into a position lost for the opponent is
+ *  won, and otherwise the moves that stay in the class are counted.
+ *  Then, for increasing distances, the positions decided at that
+ *  distance are settled, and each move leading to one of them is taken
+ *  back: a move to a lost position wins for the position it comes from,
+ *  and a move to a won position takes one from the count of that
+ *  position's undecided moves, which loses when the count reaches zero
+ *  (unless a capture leads to a draw).  Positions still undecided at the
+ *  end are drawn.  Each pass runs over the positions in chunks, in
+ *  parallel, one per thread; the state of each position is a single
+ *  word updated atomically.
+ *  @author Abel Yagubyan
+ */
+public class TablebaseGenerator {
+
+    /** Positions per chunk of a pass. */
+    private static final int CHUNK = 1 << 14;
+
+    /** Fields of the state of a position: the number of moves that stay
+     *  in the class and whose outcome is undecided, a flag set if a
+     *  capture leads to a position that is not lost for the side to
+     *  move (so that this position cannot be lost), the greatest distance
+     *  of a capture to a position won by the opponent, one more than the
+     *  distance at which the position is decided (or 0), and a flag set
+     *  once it has been. */
+    private static final int COUNT_MASK = 0xff, NO_LOSS = 1 << 8,
+        FLOOR_SHIFT = 9, FLOOR_MASK = 0x3ff,
+        LEVEL_SHIFT = 19, LEVEL_MASK = 0xfff,
+        SETTLED = 1 << 31;
+
+    /** Classes named on the command line. */
+    private static final Pattern CLASS = Pattern.compile("(\\d+)v(\\d+)");
+
+    /** Generate tablebases.  ARGS are the name of the directory to hold
+     *  them, then one or more classes written WvB (see Tablebase),
+     *  optionally followed by the number of threads (by default, the
+     *  number of available processors).  The tables for each class and
+     *  all smaller classes are generated unless the directory already
+     *  holds them. */
+    public static void main(String... args) {
+        int nargs = args.length;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (nargs > 2 && args[nargs - 1].matches("\\d+")) {
+            nargs -= 1;
+            threads = Integer.parseInt(args[nargs]);
+        }
+        if (nargs < 2 || threads < 1) {
+            usage();
+        }
+        File dir = new File(args[0]);
+        dir.mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int k = 1; k < nargs; k += 1) {
+                Matcher name = CLASS.matcher(args[k]);
+                if (!name.matches()) {
+                    usage();
+                }
+                int white = Integer.parseInt(name.group(1)),
+                    black = Integer.parseInt(name.group(2));
+                if (white > Tablebase.MAX_WHITE
+                    || black > Tablebase.MAX_BLACK
+                    || Tablebase.size(white, black) > Integer.MAX_VALUE) {
+                    System.err.printf("class %s is too large%n", args[k]);
+                    System.exit(1);
+                }
+                generate(dir, white, black, pool);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Tablebase error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        pool.shutdown();
+        System.exit(0);
+    }
+
+    /** Generate the tables for class WHITEvBLACK and all smaller classes
+     *  in DIR, except those it already holds, running the passes on
+     *  POOL. */
+    static void generate(File dir, int white, int black,
+                         ExecutorService pool) throws IOException {
+        for (int total = 0; total <= white + black; total += 1) {
+            for (int w = Math.max(0, total - black);
+                 w <= Math.min(white, total); w += 1) {
+                if (!new File(dir, Tablebase.fileName(w, total - w))
+                    .exists()) {
+                    Tablebase smaller = new Tablebase(dir.getPath());
+                    new TablebaseGenerator(w, total - w, smaller, pool)
+                        .generate(dir);
+                }
+            }
+        }
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.TablebaseGenerator DIR"
+                           + " WvB... [THREADS]");
+        System.exit(1);
+    }
+
+    /** A generator for class WHITEvBLACK, which looks up the outcomes of
+     *  captures in SMALLER and runs its passes on POOL. */
+    private TablebaseGenerator(int white, int black, Tablebase smaller,
+                               ExecutorService pool) {
+        _white = white;
+        _black = black;
+        _smaller = smaller;
+        _pool = pool;
+        _size = (int) Tablebase.size(white, black);
+        _state = new AtomicIntegerArray(_size);
+    }
+
+    /** Generate my table and write it to its file in DIR. */
+    private void generate(File dir) throws IOException {
+        long start = System.currentTimeMillis();
+        pass(this::examine);
+        for (int level = 0; level <= _maxLevel.get(); level += 1) {
+            int distance = level;
+            pass((index, worker) -> settle(index, distance));
+            pass((index, worker) -> retract(index, distance, worker));
+        }
+        int maxCode = 0;
+        long won = 0, lost = 0;
+        for (int i = 0; i < _size; i += 1) {
+            int code = code(_state.get(i));
+            maxCode = Math.max(maxCode, code);
+            if (code % 2 == 0 && code > 0) {
+                won += 1;
+            } else if (code % 2 == 1) {
+                lost += 1;
+            }
+        }
+        int bits =
+            Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(maxCode));
+        long[] words =
+            new long[(int) (((long) _size * bits + Long.SIZE - 1)
+                            / Long.SIZE)];
+        for (int i = 0; i < _size; i += 1) {
+            long pos = (long) i * bits;
+            int word = (int) (pos >>> 6), offset = (int) (pos & 63);
+            long code = code(_state.get(i));
+            words[word] |= code << offset;
+            if (offset + bits > Long.SIZE) {
+                words[word + 1] |= code >>> (Long.SIZE - offset);
+            }
+        }
+        File file = new File(dir, Tablebase.fileName(_white, _black));
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(_white);
+            out.writeInt(_black);
+            out.writeInt(bits);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        System.out.printf("%dv%d: %d positions, %d won, %d lost,"
+                          + " longest %d plies, %d ms%n",
+                          _white, _black, _size, won, lost,
+                          Math.max(0, maxCode - 1),
+                          System.currentTimeMillis() - start);
+    }
+
+    /** Return the code (see Tablebase) of a position whose state is
+     *  STATE. */
+    private static int code(int state) {
+        return (state & SETTLED) == 0 ? 0
+            : (state >>> LEVEL_SHIFT) & LEVEL_MASK;
+    }
+
+    /** Work done on one position in a pass. */
+    private interface Step {
+        /** Do this step for the position with index INDEX, using the
+         *  scratch space of WORKER. */
+        void apply(int index, Worker worker);
+    }
+
+    /** Scratch space for one thread. */
+    private static class Worker {
+        /** The position being examined. */
+        private final Board board = new Board();
+        /** Moves. */
+        private final int[] moves = new int[Board.MAX_MOVES];
+        /** Squares. */
+        private final int[] squares = new int[Board.SIZE * Board.SIZE];
+    }
+
+    /** Apply STEP to every position, in parallel chunks, and return when
+     *  all are done. */
+    private void pass(Step step) {
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int lo = 0; lo < _size; lo += CHUNK) {
+            int first = lo, last = (int) Math.min((long) lo + CHUNK, _size);
+            chunks.add(_pool.submit(() -> {
+                Worker worker = _workers.get();
+                for (int i = first; i < last; i += 1) {
+                    step.apply(i, worker);
+                }
+            }));
+        }
+        try {
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Set the initial state of the position with index INDEX, using
+     *  WORKER. */
+    private void examine(int index, Worker worker) {
+        Board board = worker.board;
+        Tablebase.setUp(_white, _black, index, board, worker.squares);
+        int king = board.kingIndex(), throne = Board.THRONE.index();
+        if (Square.sq(king).isEdge()
+            || king != throne && board.get(throne) != EMPTY) {
+            _state.set(index, SETTLED);
+            return;
+        }
+        Piece mover = board.turn();
+        int[] moves = worker.moves;
+        int n = board.generateMoves(mover, moves, 0);
+        int count = 0, floor = 0, win = Integer.MAX_VALUE;
+        boolean noLoss = false;
+        for (int k = 0; k < n && win > 1; k += 1) {
+            int move = moves[k];
+            if (Move.from(move) == king && Square.sq(Move.to(move)).isEdge()) {
+                win = 1;
+            } else if (!board.isCapture(move)) {
+                count += 1;
+            } else {
+                board.makeMove(move);
+                int code = board.winner() == mover ? 1 : _smaller.probe(board);
+                board.undo();
+                if (code < 0) {
+                    throw new IllegalStateException("missing tablebase");
+                } else if (code == 0) {
+                    noLoss = true;
+                } else if (code % 2 == 1) {
+                    win = Math.min(win, code);
+                    noLoss = true;
+                } else {
+                    floor = Math.max(floor, code - 1);
+                }
+            }
+        }
+        if (count > COUNT_MASK || floor > FLOOR_MASK) {
+            throw new IllegalStateException("class too large");
+        }
+        int state = count | (noLoss ? NO_LOSS : 0) | floor << FLOOR_SHIFT;
+        if (n == 0) {
+            state = schedule(state, 0);
+        } else if (win != Integer.MAX_VALUE) {
+            state = schedule(state, win);
+        } else if (count == 0 && !noLoss) {
+            state = schedule(state, floor + 1);
+        }
+        _state.set(index, state);
+    }
+
+    /** Mark the position with index INDEX as decided if it is to be
+     *  decided at DISTANCE. */
+    private void settle(int index, int distance) {
+        int state = _state.get(index);
+        if ((state & SETTLED) == 0
+            && (state >>> LEVEL_SHIFT & LEVEL_MASK) == distance + 1) {
+            _state.set(index, state | SETTLED);
+        }
+    }
+
+    /** If the position with index INDEX has been decided at DISTANCE,
+     *  take back each move leading to it that did not capture, and
+     *  update the state of the position the move was made from, using
+     *  WORKER. */
+    private void retract(int index, int distance, Worker worker) {
+        int state = _state.get(index);
+        if ((state & SETTLED) == 0
+            || (state >>> LEVEL_SHIFT & LEVEL_MASK) != distance + 1) {
+            return;
+        }
+        Board board = worker.board;
+        Tablebase.setUp(_white, _black, index, board, worker.squares);
+        Piece mover = board.turn().opponent();
+        int[] squares = worker.squares;
+        int n = 0;
+        for (int sq = 0; sq < squares.length; sq += 1) {
+            if (board.get(sq).side() == mover) {
+                squares[n] = sq;
+                n += 1;
+            }
+        }
+        for (int k = 0; k < n; k += 1) {
+            Square to = Square.sq(squares[k]);
+            Piece piece = board.get(to);
+            for (int dir = 0; dir < 4; dir += 1) {
+                for (int steps = 1; true; steps += 1) {
+                    Square from = to.rookMove(dir, steps);
+                    if (from == null || board.get(from) != EMPTY) {
+                        break;
+                    }
+                    if (piece == KING ? from.isEdge()
+                        : from == Board.THRONE) {
+                        continue;
+                    }
+                    board.put(EMPTY, to);
+                    board.put(piece, from);
+                    board.makeNullMove();
+                    if (!board.isCapture(Move.pack(from.index(),
+                                                   to.index()))) {
+                        update((int) Tablebase.index(_white, _black, board),
+                               distance);
+                    }
+                    board.makeNullMove();
+                    board.put(EMPTY, from);
+                    board.put(piece, to);
+                }
+            }
+        }
+    }
+
+    /** Update the state of the position with index INDEX, from which a
+     *  move leads to a position decided at DISTANCE. */
+    private void update(int index, int distance) {
+        while (true) {
+            int state = _state.get(index);
+            if ((state & SETTLED) != 0) {
+                return;
+            }
+            int next;
+            if (distance % 2 == 0) {
+                next = schedule(state, distance + 1);
+            } else {
+                if ((state & COUNT_MASK) == 0) {
+                    throw new IllegalStateException("inconsistent count");
+                }
+                next = state - 1;
+                if ((next & COUNT_MASK) == 0 && (next & NO_LOSS) == 0) {
+                    int floor = next >>> FLOOR_SHIFT & FLOOR_MASK;
+                    next = schedule(next, Math.max(distance, floor) + 1);
+                }
+            }
+            if (_state.compareAndSet(index, state, next)) {
+                return;
+            }
+        }
+    }
+
+    /** Return STATE changed so that its position is decided at DISTANCE,
+     *  unless it is already to be decided sooner. */
+    private int schedule(int state, int distance) {
+        int level = state >>> LEVEL_SHIFT & LEVEL_MASK;
+        if (level != 0 && level <= distance + 1) {
+            return state;
+        }
+        if (distance + 1 > LEVEL_MASK) {
+            throw new IllegalStateException("distance too long");
+        }
+        _maxLevel.accumulateAndGet(distance, Math::max);
+        return state & ~(LEVEL_MASK << LEVEL_SHIFT)
+            | (distance + 1) << LEVEL_SHIFT;
+    }
+
+    /** The number of white pieces other than the king, and of black
+     *  pieces, in my class. */
+    private final int _white, _black;
+    /** Tables of the classes that captures lead to. */
+    private final Tablebase _smaller;
+    /** Runs my passes. */
+    private final ExecutorService _pool;
+    /** The number of positions in my class. */
+    private final int _size;
+    /** The state of each position, as described at COUNT_MASK. */
+    private final AtomicIntegerArray _state;
+    /** The greatest distance at which a position is to be decided. */
+    private final AtomicInteger _maxLevel = new AtomicInteger();
+    /** Scratch space of each thread. */
+    private final ThreadLocal<Worker> _workers =
+        ThreadLocal.withInitial(Worker::new);
+}
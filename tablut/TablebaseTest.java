@@ -0,0 +1,109 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of Tablebase and TablebaseGenerator.
+ *  @author Abel Yagubyan
+ */
+public class TablebaseTest {
+
+    /** Return the code (see Tablebase) of BOARD if the game ends within
+     *  PLIES plies with best play, and otherwise 0, found by a plain
+     *  minimax search. */
+    private static int solve(Board board, int plies) {
+        Piece mover = board.turn();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.generateMoves(mover, moves, 0);
+        if (n == 0) {
+            return 1;
+        } else if (plies == 0) {
+            return 0;
+        }
+        int win = Integer.MAX_VALUE, loss = 0;
+        boolean lost = true;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            int code = board.winner() == mover ? 1 : solve(board, plies - 1);
+            board.undo();
+            if (code % 2 == 1) {
+                win = Math.min(win, code + 1);
+            } else if (code == 0) {
+                lost = false;
+            } else {
+                loss = Math.max(loss, code + 1);
+            }
+        }
+        return win != Integer.MAX_VALUE ? win : lost ? loss : 0;
+    }
+
+    /** Return true iff BOARD is a position the tables cover: the king is
+     *  not on the edge, and only the king may be on the throne. */
+    private static boolean valid(Board board) {
+        int king = board.kingIndex(), throne = Board.THRONE.index();
+        return !Square.sq(king).isEdge()
+            && (king == throne || board.get(throne) == EMPTY);
+    }
+
+    @Test
+    public void testIndex() {
+        Board board = new Board();
+        int[] scratch = new int[3];
+        long size = Tablebase.size(1, 2);
+        for (long index = 0; index < size; index += 9973) {
+            Tablebase.setUp(1, 2, index, board, scratch);
+            assertEquals("pieces", 2, board.pieceCount(WHITE));
+            assertEquals("pieces", 2, board.pieceCount(BLACK));
+            assertEquals("index", index, Tablebase.index(1, 2, board));
+        }
+    }
+
+    @Test
+    public void testGenerated() throws IOException {
+        File dir = Files.createTempDirectory("tablebases").toFile();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            TablebaseGenerator.generate(dir, 0, 1, pool);
+            Tablebase tables = new Tablebase(dir.getPath());
+            assertEquals("tables", 2, tables.count());
+            assertTrue("0v1", tables.covers(0, 1));
+            assertTrue("0v0", tables.covers(0, 0));
+
+            Board board = new Board();
+            board.clear(WHITE);
+            board.put(KING, Square.sq("e5"));
+            board.put(BLACK, Square.sq("b2"));
+            assertEquals("king escapes next ply", 2, tables.probe(board));
+            board.clear(BLACK);
+            board.put(KING, Square.sq("e5"));
+            board.put(BLACK, Square.sq("b2"));
+            assertEquals("black cannot stop the king", 3,
+                         tables.probe(board));
+
+            int[] scratch = new int[1];
+            long size = Tablebase.size(0, 1);
+            for (long index = 0; index < size; index += 7) {
+                Tablebase.setUp(0, 1, index, board, scratch);
+                if (valid(board)) {
+                    assertEquals(board.toString(), solve(board, 3),
+                                 tables.probe(board));
+                }
+            }
+        } finally {
+            pool.shutdown();
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+}
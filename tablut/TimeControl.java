@@ -0,0 +1,61 @@
+package tablut;
+
+/** Decides how long an automated player may think about each move, and
+ *  keeps its clock if it has one.
+ *  @author Abel Yagubyan
+ */
+class TimeControl {
+
+    /** Number of moves assumed to remain when there is no move limit. */
+    static final int DEFAULT_MOVES_TO_GO = 30;
+
+    /** Least time allowed for a move, in milliseconds. */
+    static final long MIN_MOVE_TIME = 10;
+
+    /** A TimeControl allowing up to MOVETIME milliseconds per move and,
+     *  if CLOCK > 0, CLOCK milliseconds for all of a side's moves in a
+     *  game. */
+    TimeControl(long moveTime, long clock) {
+        _moveTime = moveTime;
+        _clock = clock;
+        _remaining = clock;
+    }
+
+    /** Return the number of milliseconds SIDE may spend on its next move
+     *  on BOARD.  This is the per-move time, reduced if need be so that
+     *  the time left on the clock covers all the moves SIDE still has to
+     *  make before the move limit (or DEFAULT_MOVES_TO_GO). */
+    long budget(Board board, Piece side) {
+        if (board.moveCount() <= 1) {
+            _remaining = _clock;
+        }
+        long budget = _moveTime;
+        if (_clock > 0) {
+            budget = Math.min(budget, _remaining / movesToGo(board, side));
+        }
+        return Math.max(budget, MIN_MOVE_TIME);
+    }
+
+    /** Record that MILLIS milliseconds were spent on a move. */
+    void used(long millis) {
+        _remaining = Math.max(0, _remaining - millis);
+    }
+
+    /** Return the number of moves SIDE has yet to make on BOARD, including
+     *  the next one. */
+    private static int movesToGo(Board board, Piece side) {
+        int limit = board.moveLimit();
+        if (limit <= 0) {
+            return DEFAULT_MOVES_TO_GO;
+        }
+        int pliesLeft = 2 * limit - board.moveCount();
+        return Math.max(1, (pliesLeft + 1) / 2);
+    }
+
+    /** Time allowed per move, in milliseconds. */
+    private final long _moveTime;
+    /** Time per game on the clock, in milliseconds, or 0 for no clock. */
+    private final long _clock;
+    /** Time left on the clock, in milliseconds. */
+    private long _remaining;
+}
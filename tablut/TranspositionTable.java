@@ -0,0 +1,147 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results keyed by Board.hashKey().
+ *  The table is an array of longs organized in buckets of two slots.
+ *  The first slot of a bucket keeps the deepest result stored there in
+ *  the current search; the second slot takes whatever the first
+ *  declines, so that recent results are never lost entirely.  Each slot
+ *  is a key word and a data word; the data word packs the score, bound
+ *  type, depth, best move and search generation of the entry.
+ *  The table may be shared by several searching threads without
+ *  locking.  The key word holds the key XORed with the data word, so
+ *  that a slot whose two words were written by different threads, or
+ *  only half written, fails to match its key rather than producing
+ *  another position's data.
+ *  @author Abel Yagubyan
+ */
+class TranspositionTable {
+
+    /** Bound types.  EXACT is an exact score, LOWER a lower bound (the
+     *  search failed high) and UPPER an upper bound (it failed low).  NONE
+     *  marks a missing entry. */
+    static final int NONE = 0, EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** Number of longs in a slot, and in a bucket. */
+    private static final int SLOT_SIZE = 2, BUCKET_SIZE = 2 * SLOT_SIZE;
+
+    /** Layout of a data word.  The score is the low 32 bits; the move,
+     *  depth, bound and generation fields follow in the given widths. */
+    private static final int
+        MOVE_SHIFT = 32, MOVE_BITS = 15,
+        DEPTH_SHIFT = MOVE_SHIFT + MOVE_BITS, DEPTH_BITS = 7,
+        BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS, BOUND_BITS = 2,
+        GENERATION_SHIFT = BOUND_SHIFT + BOUND_BITS, GENERATION_BITS = 8;
+
+    /** The largest depth that can be stored. */
+    static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    /** A table using about MEGABYTES megabytes (at least one bucket). */
+    TranspositionTable(int megabytes) {
+        long longs = (long) megabytes << 17;
+        int buckets = 1;
+        while (2L * buckets * BUCKET_SIZE <= longs
+               && 2L * buckets * BUCKET_SIZE <= Integer.MAX_VALUE) {
+            buckets *= 2;
+        }
+        _table = new long[buckets * BUCKET_SIZE];
+        _mask = buckets - 1;
+    }
+
+    /** Start a new search: entries from earlier searches may now be
+     *  replaced regardless of depth. */
+    void newSearch() {
+        _generation = (_generation + 1) & ((1 << GENERATION_BITS) - 1);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_table, 0);
+    }
+
+    /** Return the data word stored for KEY, or 0 if there is none. */
+    long probe(long key) {
+        int b = bucket(key);
+        for (int s = b; s < b + BUCKET_SIZE; s += SLOT_SIZE) {
+            long data = _table[s + 1];
+            if (data != 0 && (_table[s] ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Record for KEY a search result SCORE of bound type BOUND from a
+     *  search of depth DEPTH whose best move was the packed move MOVE
+     *  (or StagedMoves.NO_MOVE). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int b = bucket(key);
+        long data = (score & 0xffffffffL)
+            | (long) (move == StagedMoves.NO_MOVE ? 0 : move) << MOVE_SHIFT
+            | (long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) _generation << GENERATION_SHIFT;
+        long oldKey = _table[b], old = _table[b + 1];
+        boolean same = (oldKey ^ old) == key;
+        if (same || old == 0 || depth >= depth(old)
+            || generation(old) != _generation) {
+            if (!same && old != 0) {
+                _table[b + SLOT_SIZE] = oldKey;
+                _table[b + SLOT_SIZE + 1] = old;
+            }
+            _table[b] = key ^ data;
+            _table[b + 1] = data;
+        } else {
+            _table[b + SLOT_SIZE] = key ^ data;
+            _table[b + SLOT_SIZE + 1] = data;
+        }
+    }
+
+    /** Return the score in data word DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the packed best move in data word DATA, or
+     *  StagedMoves.NO_MOVE if there is none. */
+    static int move(long data) {
+        int move = (int) field(data, MOVE_SHIFT, MOVE_BITS);
+        return move == 0 ? StagedMoves.NO_MOVE : move;
+    }
+
+    /** Return the search depth in data word DATA. */
+    static int depth(long data) {
+        return (int) field(data, DEPTH_SHIFT, DEPTH_BITS);
+    }
+
+    /** Return the bound type in data word DATA. */
+    static int bound(long data) {
+        return (int) field(data, BOUND_SHIFT, BOUND_BITS);
+    }
+
+    /** Return the generation in data word DATA. */
+    private static int generation(long data) {
+        return (int) field(data, GENERATION_SHIFT, GENERATION_BITS);
+    }
+
+    /** Return the BITS-bit field of DATA starting at bit SHIFT. */
+    private static long field(long data, int shift, int bits) {
+        return (data >>> shift) & ((1L << bits) - 1);
+    }
+
+    /** Return the index in _table of the bucket for KEY. */
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & _mask) * BUCKET_SIZE;
+    }
+
+    /** The slots.  Bucket i occupies BUCKET_SIZE entries from
+     *  i * BUCKET_SIZE; within a slot, the key (XORed with the data)
+     *  precedes the data. */
+    private final long[] _table;
+    /** Number of buckets minus 1 (the number of buckets is a power of
+     *  2). */
+    private final int _mask;
+    /** Generation of the current search. */
+    private int _generation;
+}
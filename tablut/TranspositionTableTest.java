@@ -0,0 +1,110 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.TranspositionTable.*;
+
+/** Tests of TranspositionTable.
+ *  @author Abel Yagubyan
+ */
+public class TranspositionTableTest {
+
+    /** Scores to store, including the extremes of the search's range. */
+    private static final int[] SCORES = {
+        0, 1, -1, 12345, -12345, Searcher.WINNING_VALUE,
+        -Searcher.WINNING_VALUE, Integer.MAX_VALUE, -Integer.MAX_VALUE
+    };
+
+    /** Packed moves to store. */
+    private static final int[] MOVES = {
+        StagedMoves.NO_MOVE, Move.pack(0, 1), Move.pack(80, 8),
+        Move.pack(40, 44) | Move.CAPTURE
+    };
+
+    /** Assert that the data word for KEY in TABLE holds DEPTH, BOUND,
+     *  SCORE and MOVE. */
+    private static void assertEntry(TranspositionTable table, long key,
+                                    int depth, int bound, int score,
+                                    int move) {
+        long data = table.probe(key);
+        assertNotEquals("missing entry", 0, data);
+        assertEquals("depth", depth, depth(data));
+        assertEquals("bound", bound, bound(data));
+        assertEquals("score", score, score(data));
+        assertEquals("move", move, move(data));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        TranspositionTable table = new TranspositionTable(1);
+        int[] bounds = { EXACT, LOWER, UPPER };
+        int[] depths = { 0, 1, 17, MAX_DEPTH };
+        long key = 0;
+        for (int score : SCORES) {
+            for (int move : MOVES) {
+                for (int bound : bounds) {
+                    for (int depth : depths) {
+                        key += 0x9e3779b97f4a7c15L;
+                        table.clear();
+                        table.store(key, depth, bound, score, move);
+                        assertEntry(table, key, depth, bound, score, move);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDepthClamp() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(42, MAX_DEPTH + 1, LOWER, -7, MOVES[2]);
+        assertEntry(table, 42, MAX_DEPTH, LOWER, -7, MOVES[2]);
+        table.store(43, Searcher.MAX_DEPTH * 4, UPPER, 7, MOVES[1]);
+        assertEntry(table, 43, MAX_DEPTH, UPPER, 7, MOVES[1]);
+    }
+
+    @Test
+    public void testMissing() {
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals("empty table", 0, table.probe(42));
+        table.store(42, 3, EXACT, 0, StagedMoves.NO_MOVE);
+        assertNotEquals("stored", 0, table.probe(42));
+        assertEquals("other key", 0, table.probe(43));
+        table.clear();
+        assertEquals("cleared", 0, table.probe(42));
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(0);
+        table.newSearch();
+        table.store(1, 5, EXACT, 10, MOVES[1]);
+        table.store(2, 3, EXACT, 20, MOVES[1]);
+        assertEntry(table, 1, 5, EXACT, 10, MOVES[1]);
+        assertEntry(table, 2, 3, EXACT, 20, MOVES[1]);
+
+        table.store(3, 2, LOWER, 30, MOVES[2]);
+        assertEntry(table, 1, 5, EXACT, 10, MOVES[1]);
+        assertEquals("second slot replaced", 0, table.probe(2));
+        assertEntry(table, 3, 2, LOWER, 30, MOVES[2]);
+
+        table.store(4, 7, UPPER, -40, MOVES[3]);
+        assertEntry(table, 4, 7, UPPER, -40, MOVES[3]);
+        assertEntry(table, 1, 5, EXACT, 10, MOVES[1]);
+        assertEquals("deeper entry demotes the first slot", 0,
+                     table.probe(3));
+
+        table.store(4, 1, EXACT, 50, MOVES[1]);
+        assertEntry(table, 4, 1, EXACT, 50, MOVES[1]);
+        assertEntry(table, 1, 5, EXACT, 10, MOVES[1]);
+
+        table.store(5, 6, EXACT, 60, MOVES[1]);
+        table.newSearch();
+        table.store(6, 0, UPPER, 70, StagedMoves.NO_MOVE);
+        assertEntry(table, 6, 0, UPPER, 70, StagedMoves.NO_MOVE);
+        assertEntry(table, 5, 6, EXACT, 60, MOVES[1]);
+        assertEquals("only two slots", 0, table.probe(4));
+    }
+
+}
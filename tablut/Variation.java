@@ -0,0 +1,45 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** A line of play found by a search: a move from the position searched,
+ *  the moves the search expects to follow it, and its value.
+ *  @author Abel Yagubyan
+ */
+class Variation {
+
+    /** A variation consisting of MOVES, the first of which is made from
+     *  the position searched, whose value for the side to move in that
+     *  position is VALUE. */
+    Variation(int value, List<Move> moves) {
+        _value = value;
+        _moves = Collections.unmodifiableList(new ArrayList<>(moves));
+    }
+
+    /** Return my value, for the side to move in the position searched. */
+    int value() {
+        return _value;
+    }
+
+    /** Return my first move. */
+    Move move() {
+        return _moves.get(0);
+    }
+
+    /** Return my moves. */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s value %d pv %s", move(), _value, _moves);
+    }
+
+    /** My value. */
+    private final int _value;
+    /** My moves. */
+    private final List<Move> _moves;
+}
@@ -0,0 +1,334 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import static tablut.Piece.*;
+
+/** A parallel alpha-beta search by the Young Brothers Wait method, run
+ *  on a ForkJoinPool.  At the root and at each node at least
+ *  _config.splitDepth levels from the leaves, the first (eldest) move is
+ *  searched serially; once its value is known, the remaining (younger)
+ *  moves are searched in parallel as separate tasks, each on its own
+ *  copy of the Board, with a null window (and late quiet moves at
+ *  reduced depth, as in Searcher); any that prove better are searched
+ *  again serially.  When one of them produces a cutoff, its siblings
+ *  are cancelled: every task checks periodically whether a sibling of
+ *  it or of any of its ancestors has produced a cutoff, and if so
+ *  abandons its search.  Nodes closer to the leaves are searched
+ *  serially by a Searcher belonging to the worker thread.
+ *  @author Abel Yagubyan
+ */
+class YoungBrothersSearch implements RootSearch {
+
+    /** A magnitude greater than a normal value. */
+    private static final int INFTY = Integer.MAX_VALUE;
+
+    /** A search using the settings in CONFIG and sharing TABLE, whose
+     *  tasks run on POOL, and which stops when STOP returns true. */
+    YoungBrothersSearch(SearchConfig config, TranspositionTable table,
+                        ForkJoinPool pool, BooleanSupplier stop) {
+        _config = config;
+        _table = table;
+        _pool = pool;
+        _stop = stop;
+    }
+
+    @Override
+    public void start(Board board, long deadline) {
+        _board = board;
+        _sense = board.turn() == WHITE ? 1 : -1;
+        _deadline = deadline;
+        _canStop = false;
+        _timeUp = false;
+        _nodes.reset();
+        _depth = 0;
+        _value = 0;
+        _principalVariation.clear();
+    }
+
+    @Override
+    public boolean iterate(int depth) {
+        _canStop = !_principalVariation.isEmpty();
+        Node root = new Node(null, _board, depth, -INFTY, INFTY, _sense);
+        int value = _pool.invoke(root);
+        if (_timeUp || root._bestMove == StagedMoves.NO_MOVE) {
+            return false;
+        }
+        _value = value;
+        _depth = depth;
+        _principalVariation.clear();
+        _principalVariation.add(Move.mv(root._bestMove));
+        Board board = new Board(_board);
+        board.makeMove(root._bestMove);
+        for (int d = 1; d < depth && board.winner() == null; d += 1) {
+            long entry = _table.probe(board.hashKey());
+            int move = entry == 0 ? StagedMoves.NO_MOVE
+                : TranspositionTable.move(entry);
+            if (move == StagedMoves.NO_MOVE
+                || !board.isLegal(Square.sq(Move.from(move)),
+                                  Square.sq(Move.to(move)))) {
+                break;
+            }
+            _principalVariation.add(Move.mv(move));
+            board.makeMove(move);
+        }
+        return true;
+    }
+
+    @Override
+    public List<Move> principalVariation() {
+        return Collections.unmodifiableList(_principalVariation);
+    }
+
+    @Override
+    public int value() {
+        return _value;
+    }
+
+    @Override
+    public int depth() {
+        return _depth;
+    }
+
+    @Override
+    public long nodes() {
+        return _nodes.sum();
+    }
+
+    /** Return true iff the current search has run out of time or been
+     *  stopped. */
+    private boolean timeUp() {
+        if (!_timeUp
+            && (_stop.getAsBoolean()
+                || _canStop && System.currentTimeMillis() > _deadline)) {
+            _timeUp = true;
+        }
+        return _timeUp;
+    }
+
+    /** The task of searching one node of the tree. */
+    private class Node extends RecursiveTask<Integer> {
+
+        /** A task searching BOARD, which becomes its own, to DEPTH levels
+         *  for the side to move, whose sense is SENSE, with window
+         *  ALPHA .. BETA, as a child of PARENT (null at the root).  For a
+         *  younger brother, the window is instead the null window at
+         *  PARENT's alpha when the task starts. */
+        Node(Node parent, Board board, int depth, int alpha, int beta,
+             int sense) {
+            _parent = parent;
+            _board = board;
+            _depth = depth;
+            _alpha = alpha;
+            _beta = beta;
+            _sense = sense;
+        }
+
+        /** Return the value of my node for the side to move: exact if
+         *  strictly between my alpha and beta, and otherwise a bound on
+         *  the same side of the window.  The value is meaningless if my
+         *  search is cancelled. */
+        @Override
+        protected Integer compute() {
+            if (_young) {
+                int alpha = _parent._liveAlpha;
+                _alpha = -alpha - 1;
+                _beta = -alpha;
+            }
+            if (_parent != null
+                && (_depth < _config.splitDepth || _board.winner() != null)) {
+                Searcher searcher = _workers.get();
+                long nodes = searcher.nodes();
+                int value = searcher.searchSubtree(_board, _move, _depth,
+                                                   _sense, _alpha, _beta,
+                                                   this::cancelled);
+                _nodes.add(searcher.nodes() - nodes);
+                return value;
+            }
+            _nodes.increment();
+            long key = _board.hashKey();
+            long entry = _table.probe(key);
+            if (entry != 0 && _parent != null && _alpha + 1 == _beta
+                && TranspositionTable.depth(entry) >= _depth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= _beta
+                    || bound == TranspositionTable.UPPER
+                       && score <= _alpha) {
+                    return score;
+                }
+            }
+            StagedMoves source = new StagedMoves();
+            source.reset(_board, entry == 0 ? StagedMoves.NO_MOVE
+                         : TranspositionTable.move(entry));
+            int[] moves = new int[Board.MAX_MOVES];
+            int n = 0;
+            for (int move = source.next(); move != StagedMoves.NO_MOVE;
+                 move = source.next()) {
+                moves[n] = move;
+                n += 1;
+            }
+
+            int alpha = _alpha;
+            _board.makeMove(moves[0]);
+            Node eldest =
+                new Node(this, _board, _depth - 1, -_beta, -alpha, -_sense);
+            eldest._move = moves[0];
+            int best = -eldest.compute();
+            _board.undo();
+            if (cancelled()) {
+                return 0;
+            }
+            _bestMove = moves[0];
+            if (best >= _beta) {
+                _table.store(key, _depth, TranspositionTable.LOWER, best,
+                             _bestMove);
+                return best;
+            }
+            alpha = Math.max(alpha, best);
+            _liveAlpha = alpha;
+
+            List<Node> brothers = new ArrayList<>();
+            for (int i = 1; i < n; i += 1) {
+                boolean quiet = !Move.isCapture(moves[i])
+                    && Move.from(moves[i]) != _board.kingIndex();
+                int reduction =
+                    quiet ? Searcher.reduction(_config, _depth, i) : 0;
+                Board board = new Board(_board);
+                board.makeMove(moves[i]);
+                Node brother = new Node(this, board, _depth - 1 - reduction,
+                                        0, 0, -_sense);
+                brother._young = true;
+                brother._move = moves[i];
+                brothers.add(brother);
+                brother.fork();
+            }
+            for (Node brother : brothers) {
+                int val = -brother.join();
+                if (_cutoff) {
+                    continue;
+                }
+                int searchedAlpha = -brother._beta;
+                if (val > searchedAlpha
+                    && (searchedAlpha < alpha
+                        || brother._depth < _depth - 1)) {
+                    val = -brother.research(-alpha - 1, -alpha);
+                }
+                if (val > alpha && val < _beta) {
+                    val = -brother.research(-_beta, -alpha);
+                }
+                if (cancelled()) {
+                    return 0;
+                }
+                if (val > best) {
+                    best = val;
+                    _bestMove = brother._move;
+                    alpha = Math.max(alpha, val);
+                    _liveAlpha = alpha;
+                    if (best >= _beta) {
+                        _cutoff = true;
+                    }
+                }
+            }
+            _table.store(key, _depth,
+                         _cutoff ? TranspositionTable.LOWER
+                         : best > _alpha ? TranspositionTable.EXACT
+                         : TranspositionTable.UPPER,
+                         best, _bestMove);
+            return best;
+        }
+
+        /** Return the value of my position searched serially, to the
+         *  full depth of my parent's other children, with window
+         *  ALPHA .. BETA. */
+        int research(int alpha, int beta) {
+            Node node = new Node(_parent, _board, _parent._depth - 1,
+                                 alpha, beta, _sense);
+            node._move = _move;
+            return node.compute();
+        }
+
+        /** Return true iff my search must be abandoned: time is up, or
+         *  a sibling of mine or of one of my ancestors has produced a
+         *  cutoff. */
+        boolean cancelled() {
+            if (timeUp()) {
+                return true;
+            }
+            for (Node node = _parent; node != null; node = node._parent) {
+                if (node._cutoff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** The node whose child I am, or null. */
+        private final Node _parent;
+        /** The position I search. */
+        private final Board _board;
+        /** The number of levels I search. */
+        private final int _depth;
+        /** My window. */
+        private int _alpha, _beta;
+        /** True iff I am a younger brother, searched in parallel. */
+        private boolean _young;
+        /** The best value found so far by my search, from which my
+         *  younger brothers' windows are taken as they start. */
+        private volatile int _liveAlpha;
+        /** Sense (1 for white, -1 for black) of the side to move. */
+        private final int _sense;
+        /** The packed move that led to me from my parent, or
+         *  StagedMoves.NO_MOVE at the root. */
+        private int _move = StagedMoves.NO_MOVE;
+        /** The best packed move found so far, or NO_MOVE. */
+        private int _bestMove = StagedMoves.NO_MOVE;
+        /** Set when one of my children produces a cutoff, cancelling the
+         *  searches of the others. */
+        private volatile boolean _cutoff;
+    }
+
+    /** Settings for my search. */
+    private final SearchConfig _config;
+    /** Results of searches, shared by all tasks. */
+    private final TranspositionTable _table;
+    /** Runs my tasks. */
+    private final ForkJoinPool _pool;
+    /** Returns true when my search must stop. */
+    private final BooleanSupplier _stop;
+    /** Serial searchers of each worker thread, for nodes near the
+     *  leaves. */
+    private final ThreadLocal<Searcher> _workers =
+        ThreadLocal.withInitial(this::newWorker);
+    /** The board I search. */
+    private Board _board;
+    /** Sense (1 for white, -1 for black) of the side to move on _board. */
+    private int _sense;
+    /** Time (as from System.currentTimeMillis) at which the current
+     *  search must stop. */
+    private long _deadline;
+    /** True iff the current search may stop when time is up. */
+    private volatile boolean _canStop;
+    /** True once the current search has run out of time. */
+    private volatile boolean _timeUp;
+    /** Number of nodes visited since start. */
+    private final LongAdder _nodes = new LongAdder();
+    /** The principal variation of the deepest completed search. */
+    private final List<Move> _principalVariation = new ArrayList<>();
+    /** Value, for the side to move, of the deepest completed search. */
+    private int _value;
+    /** Depth of the deepest completed search. */
+    private int _depth;
+
+    /** Return a new serial searcher for a worker thread. */
+    private Searcher newWorker() {
+        return new Searcher(_config, _table, () -> false);
+    }
+}